@@ -0,0 +1,166 @@
+package mousetrap;
+
+import util.ParseConfig;
+
+/** Optional extras for the value iteration in Mousetrap.optimize() and
+    Mousetrap2.optimize().
+
+    <p>Adding a constant to all future benefits f adds the same
+    constant to every entry of every local game's payoff matrix, and
+    thus does not change the optimal strategies; and newF(f + c) =
+    newF(f) + c, since the probabilities p and q sum to 1. So, in the
+    RELATIVE and AITKEN modes, the mean of f is subtracted from it after
+    each round (relative value iteration), which keeps the values
+    bounded; the subtracted amount is accumulated in offset, so that the
+    actual f is always f + offset.
+
+    <p>Moreover, the increment of the actual f from one round to the
+    next, for each starting position, is an estimate of the average
+    payoff per round (the gain), which converges much faster than the
+    running average f/n (geometrically, rather than as 1/n). In the
+    RELATIVE mode, the iteration is stopped once this estimate changes
+    by less than eps from one round to the next. In the AITKEN mode,
+    the estimate is, moreover, extrapolated by Aitken's
+    &Delta;<sup>2</sup> method, component by component, and it is the
+    extrapolated value that is tested for convergence.
+
+    <p>The values are passed as double[][] arrays, so that the same code
+    works for the vector f of Mousetrap (wrapped as new double[][] {f})
+    and the matrix f of Mousetrap2.
+ */
+class Acceleration {
+    /** The available modes */
+    enum Mode {
+	/** Plain value iteration, stopped only when P and Q converge */
+	NONE,
+	/** Relative value iteration, stopped when the gain converges */
+	RELATIVE,
+	/** Relative value iteration, with the gain extrapolated by
+	    Aitken's method */
+	AITKEN
+    };
+
+    final Mode mode;
+    /** The tolerance for the convergence of the gain */
+    final double eps;
+
+    /** The amount subtracted from f so far: the actual f is f + offset */
+    double offset = 0;
+    /** The actual f before the latest round, or null */
+    private double[][] prevF = null;
+    /** The last three gain estimates, the latest first */
+    private double[][][] gains = new double[3][][];
+    /** The current and the previous estimates that are tested for
+	convergence */
+    double[][] estimate = null;
+    private double[][] prevEstimate = null;
+
+    Acceleration(Mode _mode, double _eps) {
+	mode = _mode;
+	eps = _eps;
+    }
+
+    /** Reads the mode and the tolerance from the options accel and
+	accelEps; returns null if no acceleration is requested */
+    static Acceleration create(ParseConfig ht) {
+	Mode mode = ht.getOptionEnum(Mode.class, "accel", Mode.NONE);
+	double eps = ht.getOptionDouble("accelEps", 1e-6);
+	return (mode == Mode.NONE) ? null : new Acceleration(mode, eps);
+    }
+
+    /** Updates the gain estimates after a round, and makes f relative
+	again.
+	@param f1 The value of newF() in this round, for the relative f
+	@param f The f for the next round (f1*r), which is modified here
+	@param r The discount factor
+     */
+    void update(double[][] f1, double[][] f, double r) {
+	// the gains, i.e. the increments of the actual f (f1 + offset);
+	// the array of the oldest gains, which is no longer needed
+	// (unless it is the estimate in the RELATIVE mode), is reused
+	double[][] gain = (gains[2] != null && gains[2] != prevEstimate) ? gains[2] : alloc(f1);
+	if (prevF == null) prevF = alloc(f1);
+	final boolean first = (gains[0] == null);
+	for(int i=0; i<f1.length; i++) {
+	    for(int j=0; j<f1[i].length; j++) {
+		double actual = f1[i][j] + offset;
+		gain[i][j] = first ? actual : actual - prevF[i][j];
+		prevF[i][j] = actual * r;
+	    }
+	}
+	gains[2] = gains[1];
+	gains[1] = gains[0];
+	gains[0] = gain;
+
+	// f is now relative to r*offset; subtract its mean
+	double mean = 0;
+	int cnt = 0;
+	for(double[] row: f) {
+	    for(double x: row) mean += x;
+	    cnt += row.length;
+	}
+	mean /= cnt;
+	for(double[] row: f) {
+	    for(int j=0; j<row.length; j++) row[j] -= mean;
+	}
+	offset = r*offset + mean;
+
+	// the array of the previous estimate is reused too, unless it is
+	// one of the gains
+	double[][] spare = prevEstimate;
+	prevEstimate = estimate;
+	if (mode == Mode.AITKEN && gains[2] != null) {
+	    if (spare == null || spare == gains[0] || spare == gains[1] || spare == gains[2]) spare = alloc(gain);
+	    estimate = aitken(gains[2], gains[1], gains[0], spare);
+	} else {
+	    estimate = gain;
+	}
+    }
+
+    /** The arrays that, together with offset, make up the state of
+	this object, for checkpoints: the previous actual f, the three
+	latest gains, and the current and previous estimates (any of
+	them may be null) */
+    double[][][] state() {
+	return new double[][][] {prevF, gains[0], gains[1], gains[2], estimate, prevEstimate};
+    }
+
+    /** Restores the state saved from state() and offset */
+    void restore(double _offset, double[][][] s) {
+	offset = _offset;
+	prevF = s[0];
+	gains[0] = s[1];
+	gains[1] = s[2];
+	gains[2] = s[3];
+	estimate = s[4];
+	prevEstimate = s[5];
+    }
+
+    /** A new array of the same shape as x */
+    private static double[][] alloc(double[][] x) {
+	double[][] y = new double[x.length][];
+	for(int i=0; i<x.length; i++) y[i] = new double[x[i].length];
+	return y;
+    }
+
+    /** Aitken's extrapolation x2 - (x2-x1)<sup>2</sup>/(x2 - 2x1 + x0),
+	component by component (or simply x2, where the denominator is 0),
+	put into y
+     */
+    static double[][] aitken(double[][] x0, double[][] x1, double[][] x2, double[][] y) {
+	for(int i=0; i<x2.length; i++) {
+	    for(int j=0; j<x2[i].length; j++) {
+		double d1 = x2[i][j] - x1[i][j];
+		double d2 = d1 - (x1[i][j] - x0[i][j]);
+		y[i][j] = (Math.abs(d2) > 1e-15) ? x2[i][j] - d1*d1/d2 : x2[i][j];
+	    }
+	}
+	return y;
+    }
+
+    /** True if the gain estimate has changed by less than eps (in the
+	infinity norm) since the previous round */
+    boolean converged() {
+	return prevEstimate != null && Mousetrap.infNormDiff(prevEstimate, estimate) < eps;
+    }
+}
@@ -0,0 +1,41 @@
+package mousetrap;
+
+import java.io.*;
+
+/** Writes the final results in a compact binary form (big-endian, as
+    by DataOutputStream): the int MAGIC, and then, for each model, the
+    model name (writeUTF), the number of states n and of holes h (ints),
+    the labels of the states and of the holes (writeUTF), the n*h
+    elements of P and of Q, row by row, and the n elements of avgF
+    (doubles).
+ */
+class BinaryResultsSink implements ResultsSink {
+    /** "MTRP" */
+    static final int MAGIC = 0x4d545250;
+
+    private final DataOutputStream out;
+
+    BinaryResultsSink(File f) throws IOException {
+	out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+	out.writeInt(MAGIC);
+    }
+
+    public void finalResults(String model, String[] states, String[] holes, double[][] p, double[][] q, double[] avgF) throws IOException {
+	out.writeUTF(model);
+	out.writeInt(states.length);
+	out.writeInt(holes.length);
+	for(String s: states) out.writeUTF(s);
+	for(String s: holes) out.writeUTF(s);
+	for(double[] row: p) {
+	    for(double x: row) out.writeDouble(x);
+	}
+	for(double[] row: q) {
+	    for(double x: row) out.writeDouble(x);
+	}
+	for(double x: avgF) out.writeDouble(x);
+    }
+
+    public void close() throws IOException {
+	out.close();
+    }
+}
@@ -0,0 +1,203 @@
+package mousetrap;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/** A checkpoint of the value iteration in Mousetrap2.optimize(): the
+    number of rounds completed, f, avgF, the latest strategies p0 and q0
+    (only their values, since the supports are given by the model),
+    and, if acceleration is used, its state. The checkpoint is kept in
+    a memory-mapped file, so writing it is little more than a memory
+    copy; the operating system writes the pages to the disk, even if
+    the JVM dies.
+
+    <p>The file consists of a 64-byte header (see the offsets below),
+    followed by the arrays of doubles, in the order f, avgF (both flat,
+    as in Mousetrap2), the values of p0[i][j] and of q0[i][j] (for i, j
+    = 0..h-1), and, if acceleration is used, the 6 arrays of h*h
+    elements of Acceleration.state() (the space for those that are null
+    is left unused). All numbers are little-endian. The header also
+    records whether the iteration had converged, in which case a resumed
+    run does no more rounds. While a checkpoint is being written, the state word
+    in the header is 0, so a torn checkpoint is never read back; the
+    previous one is lost in this case, though.
+ */
+class Checkpoint implements Closeable {
+    static final int MAGIC = 0x4d54434b; // "MTCK"
+    static final int VERSION = 1;
+    static final int HEADER = 64;
+    /** Offsets in the header */
+    private static final int O_MAGIC=0, O_VERSION=4, O_H=8, O_STATE=12, O_ROUND=16,
+	O_ACCEL=20, O_PRESENT=24, O_NP=28, O_NQ=32, O_CONVERGED=36, O_FINGERPRINT=40, O_OFFSET=48;
+    /** The number of arrays in Acceleration.state() */
+    private static final int ACCEL_ARRAYS = 6;
+
+    final File file;
+    final int h;
+    /** The number of values in all p0[i][j] together, and in all q0[i][j] */
+    final int nP, nQ;
+    /** The ordinal of the acceleration mode, or -1 for none */
+    final int accelMode;
+    /** Identifies the model (w and w2) */
+    final long fingerprint;
+    private final MappedByteBuffer buf;
+    private final DoubleBuffer data;
+
+    /** Maps the checkpoint file of a model.
+	@param forWriting If true, the file is created (or resized) as
+	needed. An existing valid checkpoint for the same model and
+	settings is kept until the first write(), so that one can resume
+	from a file and keep checkpointing to it. If false, the file
+	must contain a checkpoint for this model and settings, which the
+	caller should check with complete() before reading it.
+     */
+    Checkpoint(File _file, int[][] w, int[][] w2, Acceleration accel, boolean forWriting) throws IOException {
+	file = _file;
+	h = w.length;
+	int np = 0, nq = 0;
+	for(int i=0; i<h; i++) np += w[i].length;
+	for(int j=0; j<h; j++) nq += w2[j].length;
+	nP = np * h;
+	nQ = nq * h;
+	accelMode = (accel == null) ? -1 : accel.mode.ordinal();
+	fingerprint = ((long)Arrays.deepHashCode(w) << 32) | (Arrays.deepHashCode(w2) & 0xffffffffL);
+	long size = HEADER + 8L * (2*h*h + nP + nQ + (accel == null ? 0 : ACCEL_ARRAYS*h*h));
+
+	try (FileChannel channel = forWriting ?
+	     FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE) :
+	     FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+	    if (forWriting) {
+		if (channel.size() > size) channel.truncate(size);
+		buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	    } else {
+		if (channel.size() < HEADER) throw new IOException("Cannot resume from " + file + ": not a checkpoint file");
+		buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	    }
+	}
+	buf.order(ByteOrder.LITTLE_ENDIAN);
+	ByteBuffer b = buf.duplicate();
+	b.position(HEADER);
+	data = b.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+
+	String err = check(!forWriting);
+	if (err == null && buf.capacity() != size) err = "made for another model";
+	if (err != null) {
+	    if (!forWriting) throw new IOException("Cannot resume from " + file + ": " + err);
+	    buf.putInt(O_STATE, 0);
+	    buf.putInt(O_MAGIC, MAGIC);
+	    buf.putInt(O_VERSION, VERSION);
+	    buf.putInt(O_H, h);
+	    buf.putInt(O_ACCEL, accelMode);
+	    buf.putInt(O_NP, nP);
+	    buf.putInt(O_NQ, nQ);
+	    buf.putLong(O_FINGERPRINT, fingerprint);
+	}
+    }
+
+    /** Returns null if the file has a checkpoint matching this model
+	and settings (which, unless forReading, must be complete), or
+	otherwise the reason why not */
+    private String check(boolean forReading) {
+	if (buf.getInt(O_MAGIC) != MAGIC || buf.getInt(O_VERSION) != VERSION) return "not a checkpoint file";
+	if (buf.getInt(O_H) != h || buf.getInt(O_NP) != nP || buf.getInt(O_NQ) != nQ ||
+	    buf.getLong(O_FINGERPRINT) != fingerprint) return "made for another model";
+	if (buf.getInt(O_ACCEL) != accelMode) return "made with other acceleration settings";
+	if (!forReading && !complete()) return "incomplete checkpoint";
+	return null;
+    }
+
+    /** True unless a write() has been interrupted */
+    boolean complete() {
+	return buf.getInt(O_STATE) == 1;
+    }
+
+    /** The number of rounds completed at the time of the checkpoint */
+    int round() {
+	return buf.getInt(O_ROUND);
+    }
+
+    /** True if the iteration had converged at the time of the checkpoint */
+    boolean converged() {
+	return buf.getInt(O_CONVERGED) != 0;
+    }
+
+    /** Saves the state after the specified number of rounds
+	@param converged True if the iteration has converged
+     */
+    void write(int round, boolean converged, double[] f, double[] avgF, SparseStrategy[][] p0, SparseStrategy[][] q0, Acceleration accel) {
+	buf.putInt(O_STATE, 0);
+	data.position(0);
+	data.put(f);
+	data.put(avgF);
+	for(SparseStrategy[] row: p0) {
+	    for(SparseStrategy x: row) data.put(x.values);
+	}
+	for(SparseStrategy[] row: q0) {
+	    for(SparseStrategy x: row) data.put(x.values);
+	}
+	int present = 0;
+	if (accel != null) {
+	    double[][][] state = accel.state();
+	    for(int k=0; k<ACCEL_ARRAYS; k++) {
+		if (state[k] == null) {
+		    data.position(data.position() + h*h);
+		    continue;
+		}
+		present |= 1 << k;
+		for(double[] row: state[k]) data.put(row);
+	    }
+	    buf.putDouble(O_OFFSET, accel.offset);
+	}
+	buf.putInt(O_PRESENT, present);
+	buf.putInt(O_ROUND, round);
+	buf.putInt(O_CONVERGED, converged ? 1 : 0);
+	buf.putInt(O_STATE, 1);
+    }
+
+    /** Restores the state saved by write(), into f, avgF and accel.
+	@param p0 Receives the saved p0, with the supports given by w
+	@param q0 Receives the saved q0, with the supports given by w2
+	@return The number of rounds completed
+     */
+    int read(double[] f, double[] avgF, SparseStrategy[][] p0, SparseStrategy[][] q0, int[][] w, int[][] w2, Acceleration accel) {
+	data.position(0);
+	data.get(f);
+	data.get(avgF);
+	for(int i=0; i<h; i++) {
+	    for(int j=0; j<h; j++) {
+		double[] values = new double[w[i].length];
+		data.get(values);
+		p0[i][j] = new SparseStrategy(w[i], values);
+	    }
+	}
+	for(int i=0; i<h; i++) {
+	    for(int j=0; j<h; j++) {
+		double[] values = new double[w2[j].length];
+		data.get(values);
+		q0[i][j] = new SparseStrategy(w2[j], values);
+	    }
+	}
+	if (accel != null) {
+	    int present = buf.getInt(O_PRESENT);
+	    double[][][] state = new double[ACCEL_ARRAYS][][];
+	    for(int k=0; k<ACCEL_ARRAYS; k++) {
+		if ((present & (1 << k)) == 0) {
+		    data.position(data.position() + h*h);
+		    continue;
+		}
+		state[k] = new double[1][h*h];
+		for(double[] row: state[k]) data.get(row);
+	    }
+	    accel.restore(buf.getDouble(O_OFFSET), state);
+	}
+	return round();
+    }
+
+    /** Makes sure that the latest checkpoint is on the disk */
+    public void close() {
+	if (!buf.isReadOnly()) buf.force();
+    }
+}
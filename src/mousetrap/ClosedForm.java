@@ -0,0 +1,207 @@
+package mousetrap;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Closed-form solutions of the local games, as an alternative to
+    solving them with the simplex method (see Mousetrap.pOptimize2()).
+    Each solution is checked (see isEquilibrium()), and, if the check
+    fails, or if there is no closed form for the game at hand, the
+    caller falls back to the simplex method. An object of this class
+    keeps the counts of both outcomes.
+
+    <p>The strategies are given as {p, q}, indexed by the rows and the
+    columns of the payoff matrix, respectively, in which the row
+    player maximizes the payoff.
+ */
+class ClosedForm {
+    /** The number of games solved in closed form, and the number of
+	fallbacks to the simplex method */
+    final AtomicLong solved = new AtomicLong(), fallbacks = new AtomicLong();
+
+    /** The relative tolerance of the equilibrium check */
+    static final double TOL = 1e-9;
+
+    /** The attacker-constrained game of Mousetrap: the attacker (the
+	row player) plays hole w[k], the defender plays hole w[l], the
+	payoff is 1 - phi*[k==l] + f[w[k]]. The attacker plays uniformly
+	on the set S of the holes with the largest f, and the defender
+	makes him indifferent on S, i.e. f[w[k]] - phi*q[k] = fStar for
+	all k in S; the holes are added to S, in the descending order of
+	f, as long as their f exceeds the resulting fStar.
+     */
+    static double[][] attacker(double[] f, int[] w, double phi) {
+	final int L = w.length;
+	double[] v = new double[L];
+	for(int k=0; k<L; k++) v[k] = f[w[k]];
+	double[] sorted = v.clone();
+	Arrays.sort(sorted);
+	double sumF = 0;
+	int setCnt = 0;
+	while(setCnt < L && sumF < phi + setCnt * sorted[L-1-setCnt]) {
+	    sumF += sorted[L-1-setCnt];
+	    setCnt++;
+	}
+	// the holes tied with the last one included are included as well
+	final double threshold = sorted[L-setCnt];
+	double fStar = (sumF - phi) / setCnt;
+	int cnt = 0;
+	for(int k=0; k<L; k++) {
+	    if (v[k] >= threshold) cnt++;
+	}
+	if (cnt != setCnt) return null;
+	double[] p = new double[L], q = new double[L];
+	for(int k=0; k<L; k++) {
+	    if (v[k] >= threshold) {
+		p[k] = 1.0/setCnt;
+		q[k] = (v[k]-fStar)/phi;
+	    }
+	}
+	return new double[][] {p, q};
+    }
+
+    /** The defender-constrained game of Mousetrap: the defender (the
+	row player) plays hole w[k], the attacker plays any hole j, the
+	payoff is phi*[w[k]==j] + f[w[k]]. If the defender cannot cover
+	all holes, the attacker plays one that is not covered, and the
+	defender goes where f is the largest. Otherwise (w covers all h
+	holes), the attacker keeps the defender's payoff at a level v by
+	playing hole k with the probability (v-f[k])/phi (or less, where
+	that would be negative), so that v is max(max f, (phi + sum f)/h):
+	<ul>
+	<li>If it is (phi + sum f)/h, q[k] = (v-f[k])/phi on all holes, and
+	the defender plays uniformly, making the attacker indifferent.
+	<li>Otherwise, the defender plays the hole with the largest f,
+	and the attacker avoids it, putting at most (max f - f[k])/phi
+	on every other hole.
+	</ul>
+     */
+    static double[][] defender(double[] f, int[] w, double phi, int h) {
+	final int L = w.length;
+	double[] p = new double[L], q = new double[h];
+	int kmax = 0;
+	double sumF = 0;
+	for(int k=0; k<L; k++) {
+	    if (f[w[k]] > f[w[kmax]]) kmax = k;
+	    sumF += f[w[k]];
+	}
+	final double maxF = f[w[kmax]];
+	if (L < h) {
+	    // an uncovered hole
+	    int j = 0;
+	    for(int k=0; k<L && w[k]==j; k++) j++;
+	    p[kmax] = 1;
+	    q[j] = 1;
+	} else if ((phi + sumF)/L > maxF) {
+	    final double v = (phi + sumF)/L;
+	    for(int k=0; k<L; k++) {
+		p[k] = 1.0/L;
+		q[k] = (v - f[k])/phi;
+	    }
+	} else {
+	    p[kmax] = 1;
+	    double left = 1;
+	    for(int k=0; k<L && left > 0; k++) {
+		q[k] = Math.min(left, (maxF - f[k])/phi);
+		left -= q[k];
+	    }
+	}
+	return new double[][] {p, q};
+    }
+
+    /** A general matrix game with a saddle point (a pure equilibrium),
+	or a 2-by-2 game; for other games, returns null. This is used for
+	the Mousetrap2 games, in which the future benefits depend on both
+	players' holes, and thus the payoff matrix has no special
+	structure.
+     */
+    static double[][] general(double[][] A) {
+	final int L = A.length, H = A[0].length;
+	// the maximin row and the minimax column
+	int bi = 0, bj = 0;
+	double lower = 0, upper = 0;
+	for(int i=0; i<L; i++) {
+	    double m = A[i][0];
+	    for(int j=1; j<H; j++) m = Math.min(m, A[i][j]);
+	    if (i==0 || m > lower) {
+		lower = m;
+		bi = i;
+	    }
+	}
+	for(int j=0; j<H; j++) {
+	    double m = A[0][j];
+	    for(int i=1; i<L; i++) m = Math.max(m, A[i][j]);
+	    if (j==0 || m < upper) {
+		upper = m;
+		bj = j;
+	    }
+	}
+	double[] p = new double[L], q = new double[H];
+	if (upper - lower <= TOL * (1 + Math.abs(lower))) {
+	    p[bi] = 1;
+	    q[bj] = 1;
+	    return new double[][] {p, q};
+	}
+	if (L == 2 && H == 2) {
+	    // no saddle point, hence a completely mixed equilibrium, with
+	    // each player making the other one indifferent
+	    double d = A[0][0] - A[0][1] - A[1][0] + A[1][1];
+	    if (d == 0) return null;
+	    p[0] = (A[1][1] - A[1][0]) / d;
+	    p[1] = 1 - p[0];
+	    q[0] = (A[1][1] - A[0][1]) / d;
+	    q[1] = 1 - q[0];
+	    return new double[][] {p, q};
+	}
+	return null;
+    }
+
+    /** Checks that p and q are mixed strategies, and that neither
+	player can gain (by more than the tolerance) by deviating from
+	them */
+    static boolean isEquilibrium(double[][] A, double[] p, double[] q) {
+	final int L = A.length, H = A[0].length;
+	double sp = 0, sq = 0;
+	for(double x: p) {
+	    if (!(x >= -TOL)) return false;
+	    sp += x;
+	}
+	for(double x: q) {
+	    if (!(x >= -TOL)) return false;
+	    sq += x;
+	}
+	if (Math.abs(sp - 1) > TOL * L || Math.abs(sq - 1) > TOL * H) return false;
+	double[] Aq = new double[L], pA = new double[H];
+	double v = 0;
+	for(int i=0; i<L; i++) {
+	    for(int j=0; j<H; j++) {
+		Aq[i] += A[i][j] * q[j];
+		pA[j] += p[i] * A[i][j];
+	    }
+	    v += p[i] * Aq[i];
+	}
+	final double tol = TOL * (1 + Math.abs(v));
+	for(double x: Aq) {
+	    if (x > v + tol) return false;
+	}
+	for(double x: pA) {
+	    if (x < v - tol) return false;
+	}
+	return true;
+    }
+
+    /** Returns the solution if it is a valid equilibrium of A,
+	counting the outcome; otherwise, null */
+    double[][] check(double[][] A, double[][] pq) {
+	if (pq != null && isEquilibrium(A, pq[0], pq[1])) {
+	    solved.incrementAndGet();
+	    return pq;
+	}
+	fallbacks.incrementAndGet();
+	return null;
+    }
+
+    public String toString() {
+	return "Closed form: " + solved + " games solved, " + fallbacks + " fallbacks to Simplex";
+    }
+}
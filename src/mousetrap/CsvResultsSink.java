@@ -0,0 +1,49 @@
+package mousetrap;
+
+import java.io.*;
+
+/** Writes the final results as comma-separated values, one line per
+    model, state and quantity:
+    <pre>
+    model,state,P,p_0,...,p_{h-1}
+    model,state,Q,q_0,...,q_{h-1}
+    model,state,avgF,value
+    </pre>
+    The numbers are written with Double.toString(), so they can be
+    read back exactly. Labels that contain commas or quotes are quoted.
+ */
+class CsvResultsSink implements ResultsSink {
+    private final Writer w;
+    private final StringBuilder sb = new StringBuilder();
+
+    CsvResultsSink(File f) throws IOException {
+	w = new BufferedWriter(new FileWriter(f));
+	w.write("model,state,quantity,values\n");
+    }
+
+    public void finalResults(String model, String[] states, String[] holes, double[][] p, double[][] q, double[] avgF) throws IOException {
+	for(int i=0; i<states.length; i++) {
+	    row(model, states[i], "P", p[i]);
+	    row(model, states[i], "Q", q[i]);
+	    row(model, states[i], "avgF", new double[] {avgF[i]});
+	}
+    }
+
+    private void row(String model, String state, String what, double[] v) throws IOException {
+	sb.setLength(0);
+	label(model).append(',');
+	label(state).append(',').append(what);
+	for(double x: v) sb.append(',').append(x);
+	sb.append('\n');
+	w.append(sb);
+    }
+
+    private StringBuilder label(String s) {
+	if (s.indexOf(',') < 0 && s.indexOf('"') < 0) return sb.append(s);
+	return sb.append('"').append(s.replace("\"", "\"\"")).append('"');
+    }
+
+    public void close() throws IOException {
+	w.close();
+    }
+}
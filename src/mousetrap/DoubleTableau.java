@@ -0,0 +1,99 @@
+package mousetrap;
+
+import java.util.*;
+
+/** The tableau of the original Simplex.simplex() code, with every
+    entry stored as a double. Values within EPS of zero are treated
+    as zeros in sign tests and in the ratio test, so that the pivots
+    carried out are normally the same as with exact arithmetic. The
+    results are not to be trusted as such: the final basis should be
+    verified with Simplex.verifyBasis().
+ */
+class DoubleTableau extends Tableau {
+    /** Tolerance for sign tests */
+    static final double EPS = 1e-9;
+
+    final double[][] a;
+
+    /** Sets up the tableau for the problem max c*x such that A*x &lt;= b, x &gt;= 0 */
+    DoubleTableau(Rational[][] A, Rational[] b, Rational[] c) {
+	super(A.length, A[0].length + 1);
+	a = new double[m + 2][n + 1];
+	load(A, b, c);
+    }
+
+    void load(Rational[][] A, Rational[] b, Rational[] c) {
+	resetIndex();
+	for (double[] a1 : a) {
+	    Arrays.fill(a1, 0);
+	}
+	for (int i = 0; i < m; i++) {
+	    for (int j = 0; j < n - 1; j++) {
+		a[i][j] = -A[i][j].doubleValue();
+	    }
+	    a[i][n - 1] = 1;
+	    a[i][n] = b[i].doubleValue();
+	}
+	for (int j = 0; j < n - 1; j++) {
+	    a[m][j] = c[j].doubleValue();
+	}
+	a[m + 1][n - 1] = -1;
+    }
+
+    static int signum(double x) {
+	return (x > EPS) ? 1 : (x < -EPS) ? -1 : 0;
+    }
+
+    int signum(int i, int j) {
+	return signum(a[i][j]);
+    }
+
+    int compare(int i, int k, int j) {
+	return signum(a[i][j] - a[k][j]);
+    }
+
+    int compareInRow(int i, int j, int k) {
+	return signum(a[i][j] - a[i][k]);
+    }
+
+    int compareRatios(int i, int k, int E) {
+	return signum(a[i][n] / a[i][E] - a[k][n] / a[k][E]);
+    }
+
+    void pivot(int L, int E) {
+	final double[] aL = a[L];
+	aL[E] = 1 / aL[E];
+	final double f = -aL[E];
+	for (int j = 0; j <= n; j++) {
+	    if (j != E) {
+		aL[j] *= f;
+	    }
+	}
+	for (int i = 0; i <= m + 1; i++) {
+	    if (i != L) {
+		final double[] ai = a[i];
+		final double g = ai[E];
+		if (g != 0) {
+		    for (int j = 0; j <= n; j++) {
+			if (j != E) {
+			    ai[j] += aL[j] * g;
+			}
+		    }
+		}
+		ai[E] = g * aL[E];
+	    }
+	}
+    }
+
+    double doubleValue(int i, int j) {
+	return a[i][j];
+    }
+
+    /** The exact value of the double a[i][j]. This is only as accurate
+	as the floating-point pivoting that produced it; exact results
+	are obtained by re-solving from the final basis (see
+	Simplex.verifyBasis()). */
+    Rational value(int i, int j) {
+	return Rational.valueOf(a[i][j]);
+    }
+}
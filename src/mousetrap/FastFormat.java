@@ -0,0 +1,85 @@
+package mousetrap;
+
+import java.text.DecimalFormat;
+import java.util.Random;
+
+/** Formatting of numbers with 4 decimal places, producing exactly the
+    same text as DecimalFormat("0.0000"), but appending it directly to a
+    StringBuilder, without creating any objects (in all but the rarest
+    cases). When x*10000 is close to a tie (i.e. its fractional part is
+    close to 1/2), the outcome depends on the details of DecimalFormat's
+    HALF_EVEN rounding (which looks at the shortest decimal
+    representation of x, and in some cases at its exact binary value),
+    so such values, as well as very large and non-finite ones, are
+    simply passed to DecimalFormat.
+ */
+class FastFormat {
+    private static final ThreadLocal<DecimalFormat> fmt =
+	ThreadLocal.withInitial(() -> new DecimalFormat("0.0000"));
+
+    /** Appends x, formatted as by DecimalFormat("0.0000"), to sb */
+    static StringBuilder appendFixed4(StringBuilder sb, double x) {
+	final double ax = Math.abs(x);
+	// below 1e6, the rounding error of ax*10000 is well within the
+	// window around the ties
+	if (!(ax < 1e6)) return sb.append(fmt.get().format(x));
+	double s = ax * 10000;
+	long n = (long)Math.floor(s);
+	double frac = s - n;
+	if (Math.abs(frac - 0.5) < 1e-5) return sb.append(fmt.get().format(x));
+	if (frac > 0.5) n++;
+	// DecimalFormat keeps the sign of negative values that round to 0
+	if (x < 0 || x == 0 && 1/x < 0) sb.append('-');
+	sb.append(n / 10000).append('.');
+	int d = (int)(n % 10000);
+	if (d < 1000) sb.append('0');
+	if (d < 100) sb.append('0');
+	if (d < 10) sb.append('0');
+	return sb.append(d);
+    }
+
+    /** Compares appendFixed4() with DecimalFormat on random values of
+	various kinds, and reports the number of mismatches */
+    public static void main(String[] argv) {
+	Random rand = new Random(1);
+	DecimalFormat df = new DecimalFormat("0.0000");
+	StringBuilder sb = new StringBuilder();
+	int mismatches = 0, tests = 0;
+	for(int k=0; k<2000000; k++) {
+	    double x;
+	    switch (k % 4) {
+	    case 0: // arbitrary values
+		x = (rand.nextDouble() - 0.5) * Math.pow(10, rand.nextInt(12) - 6);
+		break;
+	    case 1: // ties, and near-ties, at the 5th decimal place
+		x = (rand.nextInt(2000001) - 1000000 + 0.5) / 10000;
+		if (rand.nextBoolean()) x = Math.nextUp(x);
+		break;
+	    case 2: // fractions with small denominators, as in our output
+		x = (double)(rand.nextInt(20001) - 10000) / (1 + rand.nextInt(1000));
+		break;
+	    default: // special values
+		double[] special = {0.0, -0.0, 1e-5, -1e-5, 5e-5, -5e-5, 999999.99995, -9.99995e5, 1e13};
+		x = special[rand.nextInt(special.length)];
+	    }
+	    tests++;
+	    sb.setLength(0);
+	    String a = appendFixed4(sb, x).toString(), b = df.format(x);
+	    if (!a.equals(b)) {
+		if (mismatches < 10) System.out.println("x=" + x + ": " + a + " vs. " + b);
+		mismatches++;
+	    }
+	}
+	System.out.println(tests + " tests, " + mismatches + " mismatches");
+	long t0 = System.nanoTime();
+	long len = 0;
+	for(int k=0; k<1000000; k++) {
+	    sb.setLength(0);
+	    len += appendFixed4(sb, rand.nextDouble()).length();
+	}
+	long t1 = System.nanoTime();
+	for(int k=0; k<1000000; k++) len += df.format(rand.nextDouble()).length();
+	long t2 = System.nanoTime();
+	System.out.println("Time per call: appendFixed4() " + (t1-t0)/1000000 + " ns, DecimalFormat " + (t2-t1)/1000000 + " ns");
+    }
+}
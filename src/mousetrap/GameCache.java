@@ -0,0 +1,192 @@
+package mousetrap;
+
+import java.util.*;
+
+/** A cache of solved local games (see Mousetrap.solveMatrixGame()),
+    for models in which many holes present the same local game, e.g.
+    the interior holes of a long chain, once f has become flat there.
+
+    <p>The key is a canonical form of the payoff matrix. Adding a
+    constant to all payoffs, or permuting the rows or the columns, does
+    not change the optimal strategies (other than by permuting them),
+    so the minimum entry is subtracted from all entries, the entries are
+    rounded to multiples of 1/QUANTUM (or, if options.exact is set, kept
+    exactly), and the rows and the columns are sorted by their sorted
+    contents (ties are kept in the original order). The rounding is much
+    finer than the rational approximation of the LP coefficients (see
+    Mousetrap.approxRational()): with that one, games differing by up to
+    about 1/(2*RationalApprox.MAX_DEN) would share a key, although the
+    LP, which approximates the differences of the payoffs rather than
+    the payoffs themselves, may tell them apart. This is not a
+    complete canonical form, as the ordering of identical rows or
+    columns depends on the original order; but it catches the repeats
+    that arise in our models. Since the key is the whole normalised
+    matrix, a hit means that the two games agree, after the
+    normalisation, to within the rounding, i.e. every payoff differs by
+    at most 1/QUANTUM (about 1e-9); with options.exact, only identical
+    games share a key.
+
+    <p>On a miss, the canonical matrix itself (Key.matrix()) is solved,
+    and the strategies are stored in the canonical order; they are
+    permuted to the order of the matrix at hand, both then and on a
+    hit. As the stored solution is a function of the key alone, it
+    does not matter which of several equivalent games (e.g. degenerate
+    ones, with more than one optimal strategy) is met first, and so
+    the results do not depend on the order in which the threads solving
+    the local games reach the cache. The least recently used entries
+    are dropped once the capacity is reached. The cache is shared by the
+    threads, hence the synchronization.
+ */
+class GameCache {
+    /** The canonical form of a payoff matrix */
+    static class Key {
+	final int L, H;
+	final Rational[] a;
+	Key(int _L, int _H, Rational[] _a) {
+	    L = _L;
+	    H = _H;
+	    a = _a;
+	}
+	public boolean equals(Object o) {
+	    if (!(o instanceof Key)) return false;
+	    Key k = (Key)o;
+	    return L==k.L && H==k.H && Arrays.equals(a, k.a);
+	}
+	public int hashCode() {
+	    return Arrays.hashCode(a) * 31 + L;
+	}
+	/** The canonical payoff matrix, as an L x H array */
+	double[][] matrix() {
+	    double[][] m = new double[L][H];
+	    for(int i=0; i<L; i++) {
+		for(int j=0; j<H; j++) m[i][j] = a[i*H + j].doubleValue();
+	    }
+	    return m;
+	}
+    }
+
+    /** A payoff matrix in the canonical form, with the permutations that
+	lead to it */
+    static class Canonical {
+	Key key;
+	/** The k-th row of the canonical form is row rowOrder[k] of the
+	    original matrix, and similarly for the columns */
+	int[] rowOrder, colOrder;
+    }
+
+    /** The payoffs are rounded to multiples of 1/QUANTUM */
+    static final double QUANTUM = 1 << 30;
+
+    final int capacity;
+    final SimplexResults.Options options;
+    private final LinkedHashMap<Key, Mousetrap.OptResults> map;
+    private long hits = 0, misses = 0;
+
+    /** @param _capacity The maximum number of games kept
+	@param _options The LP options (only exact is used)
+     */
+    GameCache(int _capacity, SimplexResults.Options _options) {
+	capacity = _capacity;
+	options = _options;
+	map = new LinkedHashMap<Key, Mousetrap.OptResults>(16, 0.75f, true) {
+	    protected boolean removeEldestEntry(Map.Entry<Key, Mousetrap.OptResults> e) {
+		return size() > capacity;
+	    }
+	};
+    }
+
+    /** Computes the canonical form of a payoff matrix */
+    Canonical canonical(double[][] payoffMatrix) {
+	final int L = payoffMatrix.length, H = payoffMatrix[0].length;
+	double min = payoffMatrix[0][0];
+	for(double[] row: payoffMatrix) {
+	    for(double x: row) min = Math.min(min, x);
+	}
+	Rational[][] q = new Rational[L][];
+	for(int i=0; i<L; i++) {
+	    q[i] = new Rational[H];
+	    for(int j=0; j<H; j++) {
+		double x = payoffMatrix[i][j] - min;
+		q[i][j] = Rational.valueOf(options.exact ? x : Math.rint(x * QUANTUM) / QUANTUM);
+	    }
+	}
+	Rational[][] rowSig = new Rational[L][];
+	for(int i=0; i<L; i++) {
+	    rowSig[i] = q[i].clone();
+	    Arrays.sort(rowSig[i]);
+	}
+	Rational[][] colSig = new Rational[H][];
+	for(int j=0; j<H; j++) {
+	    colSig[j] = new Rational[L];
+	    for(int i=0; i<L; i++) colSig[j][i] = q[i][j];
+	    Arrays.sort(colSig[j]);
+	}
+	Canonical c = new Canonical();
+	c.rowOrder = order(rowSig);
+	c.colOrder = order(colSig);
+	Rational[] a = new Rational[L*H];
+	for(int i=0; i<L; i++) {
+	    for(int j=0; j<H; j++) {
+		a[i*H + j] = q[c.rowOrder[i]][c.colOrder[j]];
+	    }
+	}
+	c.key = new Key(L, H, a);
+	return c;
+    }
+
+    /** The indexes of sig[], sorted by the lexicographic order of
+	sig[i] (stably) */
+    private static int[] order(Rational[][] sig) {
+	Integer[] v = new Integer[sig.length];
+	for(int i=0; i<v.length; i++) v[i] = i;
+	Arrays.sort(v, (x, y) -> {
+		Rational[] a = sig[x], b = sig[y];
+		for(int k=0; k<a.length; k++) {
+		    int d = a[k].compareTo(b[k]);
+		    if (d != 0) return d;
+		}
+		return 0;
+	    });
+	int[] z = new int[v.length];
+	for(int i=0; i<v.length; i++) z[i] = v[i];
+	return z;
+    }
+
+    /** The cached solution for a game with this canonical form,
+	permuted to the original order, or null */
+    Mousetrap.OptResults get(Canonical c) {
+	Mousetrap.OptResults r;
+	synchronized(this) {
+	    r = map.get(c.key);
+	    if (r == null) {
+		misses++;
+		return null;
+	    }
+	    hits++;
+	}
+	return toOriginal(c, r);
+    }
+
+    /** Stores the solution of the canonical game c.key.matrix()
+	@param r The solution, in the canonical order
+	@return The same solution, permuted to the original order
+     */
+    Mousetrap.OptResults put(Canonical c, Mousetrap.OptResults r) {
+	synchronized(this) {
+	    map.put(c.key, r);
+	}
+	return toOriginal(c, r);
+    }
+
+    /** Permutes a solution from the canonical order to the original one */
+    private static Mousetrap.OptResults toOriginal(Canonical c, Mousetrap.OptResults r) {
+	double[] p = new double[c.rowOrder.length], q = new double[c.colOrder.length];
+	for(int k=0; k<p.length; k++) p[c.rowOrder[k]] = r.p[k];
+	for(int k=0; k<q.length; k++) q[c.colOrder[k]] = r.q[k];
+	return new Mousetrap.OptResults(p, q);
+    }
+
+    public synchronized String toString() {
+	return "Game cache: " + hits + " hits, " + misses + " misses, " + map.size() + " games kept";
+    }
+}
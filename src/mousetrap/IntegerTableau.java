@@ -0,0 +1,158 @@
+package mousetrap;
+
+import java.math.BigInteger;
+
+/** A fraction-free (Bareiss-style, or "integer pivoting") version of
+    the Simplex.simplex() tableau. Each constraint row, and the
+    objective row, is first multiplied by the least common multiple of
+    the denominators of its entries, so that the whole tableau
+    consists of integers. (Scaling a constraint row by a positive
+    number merely rescales the slack variable of that row, and does not
+    change the ratio test; the scaling of the objective row is undone
+    when the optimum is read). After that, the tableau is kept as a
+    matrix of integers T[][] together with a single positive common
+    denominator D, so that a[i][j] = T[i][j]/D.
+
+    <p>A pivot on a[L][E] with p = T[L][E] becomes
+    <pre>
+    T'[i][j] = (T[i][j]*p - T[L][j]*T[i][E]) / D,  i != L, j != E
+    T'[i][E] = T[i][E],  T'[L][j] = -T[L][j],  T'[L][E] = D,  D' = p
+    </pre>
+    where the division by D is always exact (Sylvester's identity), so
+    there is exactly one BigInteger division per updated entry, and
+    no gcd computations at all.
+ */
+class IntegerTableau extends Tableau {
+    final BigInteger[][] t;
+    /** The common denominator; always positive */
+    BigInteger D = BigInteger.ONE;
+    /** rowScale[i] is the factor by which row i was multiplied when
+	the tableau was set up */
+    final BigInteger[] rowScale;
+
+    /** Sets up the tableau for the problem max c*x such that A*x &lt;= b, x &gt;= 0 */
+    IntegerTableau(Rational[][] A, Rational[] b, Rational[] c) {
+	super(A.length, A[0].length + 1);
+	t = new BigInteger[m + 2][n + 1];
+	rowScale = new BigInteger[m + 2];
+	load(A, b, c);
+    }
+
+    void load(Rational[][] A, Rational[] b, Rational[] c) {
+	resetIndex();
+	D = BigInteger.ONE;
+	for (int i = 0; i < m; i++) {
+	    BigInteger s = b[i].denominator();
+	    for (int j = 0; j < n - 1; j++) {
+		s = lcm(s, A[i][j].denominator());
+	    }
+	    rowScale[i] = s;
+	    for (int j = 0; j < n - 1; j++) {
+		t[i][j] = scale(A[i][j], s).negate();
+	    }
+	    t[i][n - 1] = s;
+	    t[i][n] = scale(b[i], s);
+	}
+	BigInteger s = BigInteger.ONE;
+	for (int j = 0; j < n - 1; j++) {
+	    s = lcm(s, c[j].denominator());
+	}
+	rowScale[m] = s;
+	for (int j = 0; j < n - 1; j++) {
+	    t[m][j] = scale(c[j], s);
+	}
+	t[m][n - 1] = t[m][n] = BigInteger.ZERO;
+	rowScale[m + 1] = BigInteger.ONE;
+	for (int j = 0; j <= n; j++) {
+	    t[m + 1][j] = BigInteger.ZERO;
+	}
+	t[m + 1][n - 1] = BigInteger.ONE.negate();
+    }
+
+    private static BigInteger lcm(BigInteger a, BigInteger b) {
+	if (b.equals(BigInteger.ONE) || a.equals(b)) return a;
+	if (a.equals(BigInteger.ONE)) return b;
+	return a.divide(a.gcd(b)).multiply(b);
+    }
+
+    /** x*s, which is known to be an integer */
+    private static BigInteger scale(Rational x, BigInteger s) {
+	return x.numerator().multiply(s.divide(x.denominator()));
+    }
+
+    int signum(int i, int j) {
+	return t[i][j].signum();
+    }
+
+    /** Compares the entries of the original (unscaled) rows. Only valid
+	before the first pivot, which is the only time it is used.
+     */
+    int compare(int i, int k, int j) {
+	return t[i][j].multiply(rowScale[k]).compareTo(t[k][j].multiply(rowScale[i]));
+    }
+
+    /** All entries of a row have the same scaling */
+    int compareInRow(int i, int j, int k) {
+	return t[i][j].compareTo(t[i][k]);
+    }
+
+    int compareRatios(int i, int k, int E) {
+	// the common denominator D cancels out
+	int sign = t[i][n].multiply(t[k][E]).compareTo(t[k][n].multiply(t[i][E]));
+	return sign * t[i][E].signum() * t[k][E].signum();
+    }
+
+    void pivot(int L, int E) {
+	final BigInteger p = t[L][E];
+	for (int i = 0; i <= m + 1; i++) {
+	    if (i == L) continue;
+	    final BigInteger f = t[i][E];
+	    if (f.signum() == 0) {
+		for (int j = 0; j <= n; j++) {
+		    if (j != E) t[i][j] = t[i][j].multiply(p).divide(D);
+		}
+	    } else {
+		for (int j = 0; j <= n; j++) {
+		    if (j != E) t[i][j] = t[i][j].multiply(p).subtract(t[L][j].multiply(f)).divide(D);
+		}
+	    }
+	}
+	for (int j = 0; j <= n; j++) {
+	    if (j != E) t[L][j] = t[L][j].negate();
+	}
+	t[L][E] = D;
+	D = p;
+	if (D.signum() < 0) {
+	    D = D.negate();
+	    for (BigInteger[] row : t) {
+		for (int j = 0; j <= n; j++) row[j] = row[j].negate();
+	    }
+	}
+    }
+
+    /** Since the slack variable of row i has been multiplied by
+	rowScale[i], so has its reduced cost */
+    Rational dualValue(int i, int j) {
+	return value(m, j).negate().mul(new Rational(rowScale[i], BigInteger.ONE));
+    }
+
+    /** Same as value(i,j).doubleValue(), but without the gcd computation */
+    double doubleValue(int i, int j) {
+	BigInteger num = t[i][j];
+	BigInteger den = (i == m) ? D.multiply(rowScale[m]) : D;
+	// keep both within the range of doubles
+	int shift = Math.max(num.bitLength(), den.bitLength()) - 1000;
+	if (shift > 0) {
+	    num = num.shiftRight(shift);
+	    den = den.shiftRight(shift);
+	}
+	return num.doubleValue() / den.doubleValue();
+    }
+
+    /** The value of a[i][j]; for the objective row, this is the value
+	with the original scaling */
+    Rational value(int i, int j) {
+	BigInteger den = (i == m) ? D.multiply(rowScale[m]) : D;
+	return new Rational(t[i][j], den);
+    }
+}
@@ -3,6 +3,9 @@ package mousetrap;
 import java.util.*;
 import java.text.*;
 import java.io.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 import util.ParseConfig;
 
@@ -68,34 +71,6 @@ public class Mousetrap {
     }
 
     
-   /** Descending order with respect to the values in the array. */
-    static class DescendingComparator implements Comparator<Integer> {
-        private final double[] f;
-        DescendingComparator(double[] _f) { f = _f; }
-        public int compare(Integer o1, Integer o2) {
-            double x = f[o2.intValue()] - f[o1.intValue()];
-            return (x>0) ? 1 : (x<0) ? -1 : 0;
-        }
-
-	private static Integer[] list(int n)  {
-	    Integer[] v = new Integer[n];
-	    for(int i=0; i<n; i++) v[i] = new Integer(i);
-	    return v;
-	}
-	/** Returns a list of integers which indicate the positions
-	    of largest, 2nd largest etc elements of f[w[*]], in descending
-	    order */
- 	int[] sortIndexes(int w[])  {
-	    Integer[] v = new Integer[w.length];
-	    for(int i=0; i<w.length; i++) v[i] = new Integer(w[i]);
-	    Arrays.sort(v, this);
-	    int q[] = new int[v.length];
-	    for(int i=0; i<v.length; i++) q[i] = v[i].intValue();
-	    return q;
-	}
-   }
-
-
     /** Represents a pair of mixed strategies (the constrained
 	player's p and the mobile platyer's q), as obtained by an
 	optimization method.
@@ -121,6 +96,18 @@ public class Mousetrap {
 
     boolean constrainedPlayerIsTheAttacker = true;
 
+    /** Controls how the LPs for the local games are solved */
+    SimplexResults.Options lpOptions = new SimplexResults.Options();
+
+    /** If not null, solveMatrixGame() looks up the local games in
+	this cache before solving them */
+    GameCache gameCache = null;
+
+    /** If not null, pOptimize2() tries to solve the local games in
+	closed form first, falling back to the simplex method if that
+	fails (see ClosedForm) */
+    ClosedForm closedForm = null;
+
     String nameOfConstrainedPlayer() {
 	return  constrainedPlayerIsTheAttacker ? "attacker" : "defender";
     }
@@ -130,40 +117,13 @@ public class Mousetrap {
     }
 
 
-    /** Find Nash equilibrium mixed strategies for the situation
-	when the mouse (invader) can play any of the holes listed in w[],
-	and the payoff consists of the immediate payoff
-	and the expected future benefits (in f[]).
-	This method uses the peculiar structure of the
-	payoff matrix ((I - phi * E) + e^T * w) to simplify
-	computatoins.
-	@param f future benefits 	
-     */
-    OptResults pOptimize(double [] f, int w[]) {
-	if (!constrainedPlayerIsTheAttacker) throw new IllegalArgumentException("Special optimization is only supported when the constrained player is the attacker");
-	int[] fi = (new DescendingComparator(f)).sortIndexes(w);
-	double sumF = 0;
-	final int h1 = fi.length;
-	boolean[] setHi = new boolean[h];
-	int l=0, setCnt=0;
-	while( l<h1 && sumF < phi + setCnt * f[ fi[l] ]) {
-	    sumF += f[ fi[l] ];
-	    setHi[fi[l]] = true;
-	    setCnt ++;
-	    l++;
-	}
-
-	double[] p = new double[h];
-	final double hi = 1.0/setCnt;
-	for(int i=0;i<h; i++) p[i] = setHi[i] ? hi : 0;
-
-	// apportion q
-	double fStar = (sumF - phi) / setCnt;
-	double[] q = new double[h];
-	for(int i=0;i<h; i++) q[i] = setHi[i] ? (f[i]-fStar)/phi : 0;
-		
-	OptResults res = new OptResults(p,q);
-	return res;
+    /** Converts a solution {p, q} of the local game at a hole with the
+	allowed moves w (see payoffMatrix()) to the dense form */
+    OptResults toOptResults(double[][] pq, int[] w) {
+	double [] p = spreadArray(pq[0], h, w);
+	double [] q = constrainedPlayerIsTheAttacker ? spreadArray(pq[1], h, w) :
+	    pq[1];
+	return new OptResults(p,q);
     }
 
     /** Computes the constrained player's aggregate expected payoff of
@@ -198,13 +158,25 @@ public class Mousetrap {
 	return f;
     }
 
-    static DecimalFormat fmt = new DecimalFormat("0.0000");
     String format(double x) {
-	return (x==0.0) ? "0" : fmt.format(x);
+	return appendFormat(new StringBuilder(), x).toString();
+    }
+
+    /** Appends x, formatted as by format(), to sb, without creating
+	any intermediate strings (see FastFormat) */
+    static StringBuilder appendFormat(StringBuilder sb, double x) {
+	return (x==0.0) ? sb.append('0') : FastFormat.appendFixed4(sb, x);
+    }
+
+    /** The elements of v, each one preceded by a tab */
+    static String vectorToString(double[] v) {
+	StringBuilder s = new StringBuilder();
+	for(double x: v) appendFormat(s.append('\t'), x);
+	return s.toString();
     }
 
     public String wMatrixToString(int [][]w) {
-	StringBuffer s = new	StringBuffer();
+	StringBuilder s = new	StringBuilder();
 	for(int i = 0; i<h; i++) {
 	    s.append(names[i] + " :");
 	    char[] z = new char[h];
@@ -217,18 +189,18 @@ public class Mousetrap {
     }
 
     public String matrixToString(double [][]p) {
-	StringBuffer s = new	StringBuffer();
+	StringBuilder s = new	StringBuilder();
 	for(int i = 0; i<h; i++) {
-	    s.append(names[i] + " :");
+	    s.append(names[i]).append(" :");
 	    if (p[i].length != h) throw new IllegalArgumentException("Not a square " + h + " by " + h + " matrix");
-	    for(int j=0; j<h; j++) s.append("\t" + format(p[i][j]));
-	    s.append("\n");
+	    for(int j=0; j<h; j++) appendFormat(s.append('\t'), p[i][j]);
+	    s.append('\n');
 	}
 	return s.toString();
     }
 
     String matrixToString(Rational [][]p) {
-	StringBuffer s = new	StringBuffer();
+	StringBuilder s = new	StringBuilder();
 	for(int i = 0; i<h; i++) {
 	    s.append(names[i] + " :");
 	    for(int j=0; j<h; j++) s.append("\t" + p[i][j]);
@@ -283,17 +255,6 @@ public class Mousetrap {
 	return y;
     }
 
-    /**
-       @return array y[] such that y[i] = x[w[i]]
-     */
-    static double[] arrayExtract(double[] x, int[] w) {
-	double[] y = new double[w.length];
-	for(int i=0; i<w.length; i++) {
-	    y[i] = x[w[i]];
-	}
-	return y;
-    }
-
     /** Find Nash equilibrium mixed strategies for the situation
 	when the constrained player can play any of the holes listed in w[],
 	and the payoff consists of the immediate payoff
@@ -316,6 +277,33 @@ public class Mousetrap {
 	@param f future benefits 	
      */
     OptResults pOptimize2(double [] f, int w[]) {    
+	return pOptimize2(f, w, null);
+    }
+
+    /** Same as pOptimize2(f, w), with a warm start for the LPs.
+	@param bases If not null, an array of two elements, in which
+	the final bases of the two players' LPs are kept from one
+	call to the next one (see SimplexResults.Bases)
+     */
+    OptResults pOptimize2(double [] f, int w[], SimplexResults.Bases[] bases) {    
+	double[][] payoffMatrix = payoffMatrix(f, w);
+	if (closedForm != null) {
+	    double[][] pq = closedForm.check(payoffMatrix, constrainedPlayerIsTheAttacker ?
+					     ClosedForm.attacker(f, w, phi) :
+					     ClosedForm.defender(f, w, phi, h));
+	    if (pq != null) return toOptResults(pq, w);
+	}
+	OptResults game = solveMatrixGame(payoffMatrix, bases);
+	return toOptResults(new double[][] {game.p, game.q}, w);
+    }
+
+    /** The payoff matrix of the local game at a hole with the allowed
+	moves w: the rows are the constrained player's moves; the
+	columns are the mobile player's moves, which are the same
+	holes, if the mobile player is the defender, or all holes.
+	@param f future benefits 	
+     */
+    double[][] payoffMatrix(double [] f, int w[]) {
 	final  int L = w.length;
 	double[][] payoffMatrix = new double[L][];
 	for(int i = 0; i<L; i++) {
@@ -336,17 +324,53 @@ public class Mousetrap {
 		}
 	    }
 	}
-	double[][] trans = transpose( payoffMatrix);
-	mult(trans, -1);
-	SimplexResults mouseRes = new SimplexResults(payoffMatrix);
-	SimplexResults catRes = new SimplexResults(trans);
-	//	System.out.println("M/C: " + mouseRes.maxval + " : " + (-catRes.maxval));
-	double [] p = spreadArray(mouseRes.p, h, w);
-	double [] q = constrainedPlayerIsTheAttacker ? spreadArray(catRes.p, h, w) :
-	    catRes.p;
-	OptResults res = new OptResults(p,q);
+	return payoffMatrix;
+    }
+
+    /** Solves the matrix game with the specified payoff matrix, in
+	which the row player maximizes, and the column player minimizes,
+	the payoff. Unless lpOptions.dual is set, this takes two
+	separate LP solutions, one for each player (with the transposed
+	and negated matrix for the column player); with lpOptions.dual,
+	both strategies come from a single LP.
+
+	<p>With a gameCache, a game not found in it is solved in its
+	canonical form rather than as it is, and without a warm start, so
+	that the solution stored for a key depends only on the key, and
+	not on which of the equivalent games (or which thread) got there
+	first.
+
+	@param bases If not null, a two-element array with the LP bases
+	for the row player and the column player, for a warm start
+	@return An OptResults object whose p and q are the row player's
+	and the column player's optimal mixed strategies (indexed by the
+	rows and by the columns of the matrix, respectively)
+     */
+    OptResults solveMatrixGame(double[][] payoffMatrix, SimplexResults.Bases[] bases) {
+	if (gameCache != null) {
+	    GameCache.Canonical c = gameCache.canonical(payoffMatrix);
+	    OptResults cached = gameCache.get(c);
+	    if (cached != null) return cached;
+	    return gameCache.put(c, solveLP(c.key.matrix(), null));
+	}
+	return solveLP(payoffMatrix, bases);
+    }
+
+    /** Solves the matrix game by linear programming; the parameters
+	and the result are as in solveMatrixGame() */
+    private OptResults solveLP(double[][] payoffMatrix, SimplexResults.Bases[] bases) {
+	OptResults res;
+	SimplexResults mouseRes = new SimplexResults(payoffMatrix, lpOptions, bases==null? null : bases[0]);
+	if (lpOptions.dual) {
+	    res = new OptResults(mouseRes.p, mouseRes.q);
+	} else {
+	    double[][] trans = transpose( payoffMatrix);
+	    mult(trans, -1);
+	    SimplexResults catRes = new SimplexResults(trans, lpOptions, bases==null? null : bases[1]);
+	    //	System.out.println("M/C: " + mouseRes.maxval + " : " + (-catRes.maxval));
+	    res = new OptResults(mouseRes.p, catRes.p);
+	}
 	return res;
- 	
     }
 
     static double[][] transpose(double[][] a) {
@@ -370,77 +394,491 @@ public class Mousetrap {
 	}
     }
 
-    static final boolean useSimplex = true;
+    /** If not null, the local games of each round are solved in
+	parallel in this pool (see forEachIndex()) */
+    ForkJoinPool pool = null;
+
+    /** Calls body.accept(i) for i=0..n-1: one after another, or, if
+	a pool has been set, in parallel. In either case, all calls are
+	complete on return. The calls must be independent of each
+	other. */
+    void forEachIndex(int n, IntConsumer body) {
+	if (pool == null) {
+	    for(int i = 0; i<n; i++) body.accept(i);
+	} else {
+	    pool.submit(() -> IntStream.range(0, n).parallel().forEach(body)).join();
+	}
+    }
+
+    /** Creates an h1-by-h2 array of two-element arrays of
+	SimplexResults.Bases (for the two players' LPs), to be used for
+	warm starts, if they are enabled in lpOptions; otherwise,
+	returns null.
+     */
+    SimplexResults.Bases[][][] makeBasisCache(int h1, int h2) {
+	if (!lpOptions.warmStart) return null;
+	SimplexResults.Bases[][][] cache = new SimplexResults.Bases[h1][h2][];
+	for(int i=0; i<h1; i++) {
+	    for(int j=0; j<h2; j++) {
+		cache[i][j] = new SimplexResults.Bases[] {new SimplexResults.Bases(), new SimplexResults.Bases()};
+	    }
+	}
+	return cache;
+    }
+
+    /** The maximum number of rounds of the value iteration */
+    int maxRounds = 100;
+    /** If not null, relative value iteration is used, and the
+	iteration also stops when the average payoff per round has
+	converged (see Acceleration) */
+    Acceleration accel = null;
+    /** The tolerance for the convergence of P and Q */
+    double eps = 1e-5;
+
+    /** The outcome of an optimization run, for summaries (see Sweep) */
+    static class Outcome {
+	/** The number of rounds (or policy iterations) performed */
+	final int rounds;
+	final boolean converged;
+	/** The average payoff per round, averaged for all starting holes */
+	final double avgAvgF;
+	Outcome(int _rounds, boolean _converged, double _avgAvgF) {
+	    rounds = _rounds;
+	    converged = _converged;
+	    avgAvgF = _avgAvgF;
+	}
+    }
+
+    /** The outcome of the latest optimize() or optimizePolicy() call */
+    Outcome outcome = null;
+
+    /** Receives the report and the final results (see ResultsSink,
+	TextResultsSink); if null, nothing is reported */
+    ResultsSink sink = null;
 
-    void optimize(PrintStream out) {
+    /** Adds s to the report */
+    void print(Object s) {
+	if (sink != null) sink.text(String.valueOf(s));
+    }
+
+    /** Adds s, and a line break, to the report */
+    void println(Object s) {
+	print(s + "\n");
+    }
+
+    /** Passes a round of the iteration to the sink (see ResultsSink.round()) */
+    void round(int n, boolean last, boolean strategies, ResultsSink.Round report) {
+	if (sink != null) sink.round(n, last, strategies, report);
+    }
+
+    void optimize() {
 	OptResults[] po = new OptResults[h];
 	int n=0;
 	double f[] = new double[h];
 	double[][] p0=null, q0=null;
 	double[] avgF = new double[h];
 
-	out.println("MODEL " + modelName);
-	out.println("Constrained player is the "+ nameOfConstrainedPlayer() +", mobile player is the " +
-		    nameOfMobilePlayer() );
-
-	out.println("Defender's efficiency phi="+ phi+", discount rate=" +r);
-	out.println("Constrained player's allowed movement map:");
-	out.println(wMatrixToString(w));
+	printModel();
 
 	String lab1 = "Constrained player (" + nameOfConstrainedPlayer() +")";
 	String lab2 = "Mobile player ("+    nameOfMobilePlayer()+")";
 
+	// the LP bases for each hole, kept from round to round
+	SimplexResults.Bases[][][] bases = makeBasisCache(h, 1);
+
 	boolean conv = false;
 	double avgAvgF=0;
-	final int T=100;
+	final int T=maxRounds;
 	for(; n<T && !conv; n++) {
-	    out.println("---- " + (n+1) + "-round game: ------------------");
-	    for(int i = 0; i<h; i++) {
-		if (useSimplex) {
-		    po[i] = pOptimize2(f, w[i]);
-		} else {
-		    po[i] = pOptimize(f, w[i]);
-		}
-	    }
+	    forEachIndex(h, i -> {
+		po[i] = pOptimize2(f, w[i], bases==null? null : bases[i][0]);
+	    });
 	    double p[][] = OptResults.assembleP(po);
 	    double q[][] = OptResults.assembleQ(po);
-	    out.print(lab1 + " plays P=\n" + matrixToString(p));
-	    out.print(lab2 + " plays Q=\n" + matrixToString(q));	    
 	    double[] f1 = newF( p,  q, f);
 	    avgAvgF=0;
 	    for(int i = 0; i<h; i++) {
-		avgF[i] = f1[i] / (n+1);
+		avgF[i] = (accel==null? f1[i] : f1[i] + accel.offset) / (n+1);
 		f[i] = f1[i]*r;
 		avgAvgF += avgF[i];
 	    }
 	    avgAvgF /= h;
-	    out.println(lab1 + "'s avg payoff per round (hole avg="+avgAvgF+")=");
+
+	    if (accel != null) accel.update(new double[][] {f1}, new double[][] {f}, r);
+	    final boolean accelConv = accel != null && accel.converged();
+	    final boolean pqConv = p0!=null && q0!=null && infNormDiff(p0,p)<eps  && infNormDiff(q0,q)<eps;
+	    conv = accelConv || pqConv;
+
+	    final int n1 = n+1;
+	    final double avg = avgAvgF;
+	    round(n, conv || n+1==T, true, (out, strategies) -> {
+		    out.println("---- " + n1 + "-round game: ------------------");
+		    out.print(lab1 + " plays P=\n" + matrixToString(p));
+		    out.print(lab2 + " plays Q=\n" + matrixToString(q));
+		    out.println(lab1 + "'s avg payoff per round (hole avg="+avg+")=");
+		    out.println(vectorToString(avgF));
+		    if (accel != null) {
+			out.println(lab1 + "'s limit avg payoff per round (" + accel.mode + " estimate)=");
+			out.println(vectorToString(accel.estimate[0]));
+			if (accelConv) out.println("Convergence on the avg payoff achieved within eps=" + accel.eps);
+		    }
+		    if (pqConv) out.println("Convergence on P and Q achieved within eps=" + eps);
+		});
+	    p0=p;
+	    q0=q;
+	}
+	if (!conv) println("NO CONVERGENCE ACHIEVED in " + T + " rounds");
+	if (accel != null) {
+	    // the limit, rather than the running average
+	    avgAvgF=0;
 	    for(int i = 0; i<h; i++) {
-		out.print("\t" +format(avgF[i]));
+		avgF[i] = accel.estimate[0][i];
+		avgAvgF += avgF[i];
+	    }
+	    avgAvgF /= h;
+	}
+	printApprox(lab1, p0, q0, avgF, avgAvgF);
+	dump(p0, q0, avgF);
+	outcome = new Outcome(n, conv, avgAvgF);
+    }
+
+    /** Prints the model's description at the start of the report */
+    void printModel() {
+	println("MODEL " + modelName);
+	println("Constrained player is the "+ nameOfConstrainedPlayer() +", mobile player is the " +
+		nameOfMobilePlayer() );
 
+	println("Defender's efficiency phi="+ phi+", discount rate=" +r);
+	println("Constrained player's allowed movement map:");
+	println(wMatrixToString(w));
+    }
+
+    /** Writes the final results to the sink, if it takes them */
+    void dump(double[][] p0, double[][] q0, double[] avgF) {
+	if (sink == null || !sink.takesFinalResults()) return;
+	try {
+	    sink.finalResults(modelName, names, names, p0, q0, avgF);
+	} catch(IOException ex) {
+	    throw new UncheckedIOException(ex);
+	}
+    }
+
+    /** Prints the final strategies and average payoffs, and their
+	rational approximations */
+    void printApprox(String lab1, double[][] p0, double[][] q0, double[] avgF, double avgAvgF) {
+	println("===== Approximating with rational numbers: ======");
+	print("Approx P=\n" + matrixToString(approxRational(p0)));
+	print("Approx Q=\n" + matrixToString(approxRational(q0)));
+	Rational[] ravgF = approxRational(avgF);
+	println(lab1 + "'s approx avg payoff per round=");
+	StringBuilder sb = new StringBuilder();
+	for(int i = 0; i<h; i++) sb.append('\t').append(ravgF[i]);
+	println(sb);
+	println("Avg payoff per round, averaged for all starting holes = " + format(avgAvgF) + " ~= " + approxRational(avgAvgF));
+    }
+
+    /** Which method main() uses to find the players' stationary strategies */
+    enum Solver {
+	/** Round-by-round value iteration (optimize()) */
+	VALUE,
+	/** Policy iteration (optimizePolicy()) */
+	POLICY
+    };
+
+    /** Evaluates a pair of stationary strategies: finds the
+	constrained player's average payoff per round g[i] and the
+	relative value (bias) v[i] of each hole i. Here, c[i] is the
+	expected immediate payoff at hole i (i.e., newF(p,q,0)), and
+	p[i][j] is the probability of moving from hole i to hole j.
+
+	<p>The strategies may split the holes into several recurrent
+	classes (closed sets of holes which, once entered, are never
+	left), plus transient holes. On each recurrent class C, g is a
+	constant, and it and v are found from the linear system
+	<pre>
+	v[i] + g = c[i] + sum_j p[i][j] v[j],  i in C;
+	sum_{i in C} v[i] = 0.
+	</pre>
+	On the transient holes T, g and v are then found from
+	<pre>
+	g[i] = sum_j p[i][j] g[j],  i in T;
+	v[i] + g[i] = c[i] + sum_j p[i][j] v[j],  i in T.
+	</pre>
+	@return {v, g}; or null if one of the systems turns out to be
+	(numerically) singular
+     */
+    double[][] evaluatePolicy(double[][] p, double[][] q) {
+	double[] c = newF(p, q, new double[h]);
+	double[] v = new double[h], g = new double[h];
+
+	// reach[i][j] is true if hole j can be reached from hole i
+	boolean[][] reach = new boolean[h][];
+	for(int i = 0; i<h; i++) {
+	    reach[i] = new boolean[h];
+	    int[] stack = new int[h];
+	    int top = 0;
+	    reach[i][i] = true;
+	    stack[top++] = i;
+	    while(top > 0) {
+		int k = stack[--top];
+		for(int j=0; j<h; j++) {
+		    if (p[k][j] > 0 && !reach[i][j]) {
+			reach[i][j] = true;
+			stack[top++] = j;
+		    }
+		}
+	    }
+	}
+	// the recurrent classes: a hole is recurrent if it can be
+	// reached back from every hole that can be reached from it
+	boolean[] done = new boolean[h];
+	for(int i = 0; i<h; i++) {
+	    if (done[i]) continue;
+	    boolean recurrent = true;
+	    for(int j=0; j<h && recurrent; j++) {
+		if (reach[i][j] && !reach[j][i]) recurrent = false;
 	    }
-	    out.println();
+	    if (!recurrent) continue;
+	    int[] cl = new int[h];
+	    int k = 0;
+	    for(int j=0; j<h; j++) {
+		if (reach[i][j]) {
+		    cl[k++] = j;
+		    done[j] = true;
+		}
+	    }
+	    double[][] a = new double[k+1][];
+	    double[] b = new double[k+1];
+	    for(int x = 0; x<k; x++) {
+		a[x] = new double[k+1];
+		for(int y=0; y<k; y++) a[x][y] = -p[cl[x]][cl[y]];
+		a[x][x] += 1;
+		a[x][k] = 1;
+		b[x] = c[cl[x]];
+	    }
+	    a[k] = new double[k+1];
+	    for(int y=0; y<k; y++) a[k][y] = 1;
+	    double[] sol = solveLinear(a, b);
+	    if (sol == null) return null;
+	    for(int x = 0; x<k; x++) {
+		v[cl[x]] = sol[x];
+		g[cl[x]] = sol[k];
+	    }
+	}
+	// the transient holes
+	int[] tr = new int[h];
+	int k = 0;
+	for(int i = 0; i<h; i++) {
+	    if (!done[i]) tr[k++] = i;
+	}
+	if (k > 0) {
+	    double[][] a = new double[k][];
+	    double[] b = new double[k];
+	    for(int x = 0; x<k; x++) {
+		a[x] = new double[k];
+		b[x] = 0;
+		for(int j=0; j<h; j++) {
+		    if (done[j]) b[x] += p[tr[x]][j] * g[j];
+		}
+	    }
+	    double[][] a2 = new double[k][];
+	    for(int x = 0; x<k; x++) {
+		for(int y=0; y<k; y++) a[x][y] = -p[tr[x]][tr[y]];
+		a[x][x] += 1;
+		a2[x] = a[x].clone();
+	    }
+	    double[] gt = solveLinear(a, b);
+	    if (gt == null) return null;
+	    for(int x = 0; x<k; x++) g[tr[x]] = gt[x];
+	    for(int x = 0; x<k; x++) {
+		b[x] = c[tr[x]] - g[tr[x]];
+		for(int j=0; j<h; j++) {
+		    if (done[j]) b[x] += p[tr[x]][j] * v[j];
+		}
+	    }
+	    double[] vt = solveLinear(a2, b);
+	    if (vt == null) return null;
+	    for(int x = 0; x<k; x++) v[tr[x]] = vt[x];
+	}
+	return new double[][] {v, g};
+    }
+
+    /** The mobile player's best response to the constrained player's
+	stationary strategy p. Since the mobile player does not affect
+	where the game goes next, this is simply, at each hole, the pure
+	strategy minimizing the constrained player's immediate payoff.
+	If the constrained player is the attacker, the mobile player is
+	the defender, who plays, among the holes of w[i] (see
+	pOptimize2()), the one where the attacker (p) is the most likely
+	to be. Otherwise, the mobile player is the attacker, who plays,
+	among all holes, the one where the defender is the least likely
+	to be.
+     */
+    double[][] bestResponse(double[][] p) {
+	double[][] q = new double[h][];
+	for(int i = 0; i<h; i++) {
+	    q[i] = new double[h];
+	    int best = -1;
+	    if (constrainedPlayerIsTheAttacker) {
+		for(int j: w[i]) {
+		    if (best<0 || p[i][j] > p[i][best]) best = j;
+		}
+	    } else {
+		for(int j=0; j<h; j++) {
+		    if (best<0 || p[i][j] < p[i][best]) best = j;
+		}
+	    }
+	    q[i][best] = 1;
+	}
+	return q;
+    }
 
-	    final double eps=1e-5;
-	    if (p0!=null && q0!=null && infNormDiff(p0,p)<eps  && infNormDiff(q0,q)<eps) {
-		out.println("Convergence on P and Q achieved within eps=" + eps);
+    /** Solves the linear system a*x=b by Gaussian elimination with
+	partial pivoting. The arrays a and b are destroyed.
+	@return x, or null if a is (numerically) singular
+     */
+    static double[] solveLinear(double[][] a, double[] b) {
+	final int n = b.length;
+	for(int k=0; k<n; k++) {
+	    int piv = k;
+	    for(int i=k+1; i<n; i++) {
+		if (Math.abs(a[i][k]) > Math.abs(a[piv][k])) piv = i;
+	    }
+	    if (Math.abs(a[piv][k]) < 1e-12) return null;
+	    double[] t = a[k]; a[k] = a[piv]; a[piv] = t;
+	    double u = b[k]; b[k] = b[piv]; b[piv] = u;
+	    for(int i=k+1; i<n; i++) {
+		double m = a[i][k] / a[k][k];
+		if (m == 0) continue;
+		for(int j=k; j<n; j++) a[i][j] -= m * a[k][j];
+		b[i] -= m * b[k];
+	    }
+	}
+	double[] x = new double[n];
+	for(int k=n-1; k>=0; k--) {
+	    double s = b[k];
+	    for(int j=k+1; j<n; j++) s -= a[k][j] * x[j];
+	    x[k] = s / a[k][k];
+	}
+	return x;
+    }
+
+    /** An alternative to optimize(), for the undiscounted game:
+	policy iteration, in the style of Hoffman and Karp. Starting with
+	the strategies of the 1-round game, each iteration evaluates the
+	constrained player's current stationary strategy P against the
+	mobile player's best response to it (see bestResponse() and
+	evaluatePolicy()), and then improves it by solving each hole's
+	local game (pOptimize2()). The future benefits in the local games are
+	v + K*(g - avg(g)), which is what the benefits of a K-round game
+	would approximately be, with K large enough for differences in
+	the average payoff g (which can only arise if the strategies
+	split the holes into several recurrent classes) to outweigh
+	those in the relative values v (see gainWeight()). This stops when
+	the strategies no longer change. Each iteration costs about the
+	same as one round of optimize(), but far fewer iterations are
+	usually needed.
+     */
+    void optimizePolicy() {
+	OptResults[] po = new OptResults[h];
+	double[][] p0=null, q0=null;
+	double[] avgF = new double[h];
+
+	printModel();
+	if (r != 1.0) throw new IllegalArgumentException("Policy iteration is only implemented for the undiscounted game (r=1)");
+
+	String lab1 = "Constrained player (" + nameOfConstrainedPlayer() +")";
+	String lab2 = "Mobile player ("+    nameOfMobilePlayer()+")";
+
+	SimplexResults.Bases[][][] bases = makeBasisCache(h, 1);
+
+	boolean conv = false, singular = false;
+	double avgAvgF=0;
+	// the future benefits for the local games
+	final double f[] = new double[h];
+	int n=0;
+	final int T=maxRounds;
+	for(; n<T && !conv && !singular; n++) {
+	    forEachIndex(h, i -> {
+		po[i] = pOptimize2(f, w[i], bases==null? null : bases[i][0]);
+	    });
+	    double p[][] = OptResults.assembleP(po);
+	    double q[][] = OptResults.assembleQ(po);
+
+	    final boolean pqConv = p0!=null && q0!=null && infNormDiff(p0,p)<eps  && infNormDiff(q0,q)<eps;
+	    final double[][] vg = pqConv ? null : evaluatePolicy(p, bestResponse(p));
+	    if (pqConv) {
 		conv = true;
+	    } else {
+		p0=p;
+		q0=q;
+		singular = (vg == null);
 	    }
-	    p0=p;
-	    q0=q;
+	    if (vg != null) {
+		double[] v = vg[0], g = vg[1];
+		avgAvgF=0;
+		for(int i = 0; i<h; i++) {
+		    avgF[i] = g[i];
+		    avgAvgF += g[i];
+		}
+		avgAvgF /= h;
+		double K = gainWeight(v, g);
+		for(int i = 0; i<h; i++) {
+		    f[i] = v[i] + K * (g[i] - avgAvgF);
+		}
+	    }
+
+	    final int n1 = n+1;
+	    final double avg = avgAvgF;
+	    round(n, conv || singular || n+1==T, true, (out, strategies) -> {
+		    out.println("---- Policy iteration " + n1 + ": ------------------");
+		    out.print(lab1 + " plays P=\n" + matrixToString(p));
+		    out.print(lab2 + " plays Q=\n" + matrixToString(q));
+		    if (pqConv) {
+			out.println("Convergence on P and Q achieved within eps=" + eps);
+		    } else if (vg == null) {
+			out.println("Singular system in policy evaluation");
+		    } else {
+			out.println(lab1 + "'s avg payoff per round (hole avg="+avg+")=");
+			out.println(vectorToString(vg[1]));
+			out.println("Relative values of the holes=");
+			out.println(vectorToString(vg[0]));
+		    }
+		});
 	}
-	if (!conv) out.println("NO CONVERGENCE ACHIEVED in " + T + " rounds");
-	out.println("===== Approximating with rational numbers: ======");
-	out.print("Approx P=\n" + matrixToString(approxRational(p0)));
-	out.print("Approx Q=\n" + matrixToString(approxRational(q0)));
-	Rational[] ravgF = approxRational(avgF);
-	out.println(lab1 + "'s approx avg payoff per round=");
-	for(int i = 0; i<h; i++) {
-	    out.print("\t" +ravgF[i].toString());
-	    
+	if (!conv) println("NO CONVERGENCE ACHIEVED in " + n + " iterations");
+	printApprox(lab1, p0, q0, avgF, avgAvgF);
+	dump(p0, q0, avgF);
+	outcome = new Outcome(n, conv, avgAvgF);
+    }
+
+    /** Differences in the average payoff g smaller than this are taken
+	to be rounding errors (see gainWeight()) */
+    static final double GAIN_TOL = 1e-9;
+
+    /** The weight K of the average payoffs g in the future benefits
+	v + K*(g - avg(g)) of optimizePolicy(). If two holes have
+	different g, the one with the larger g should be worth more to
+	the constrained player, whatever their relative values v and the
+	immediate payoffs, which differ by at most phi. Thus K*d must
+	exceed range(v) + phi, where d is the smallest difference between
+	two values of g (apart from those within GAIN_TOL); K is twice the
+	smallest such value. If all the holes have the same g, K is 0.
+     */
+    double gainWeight(double[] v, double[] g) {
+	double[] s = g.clone();
+	Arrays.sort(s);
+	double d = Double.POSITIVE_INFINITY;
+	for(int i = 1; i<h; i++) {
+	    if (s[i] - s[i-1] > GAIN_TOL) d = Math.min(d, s[i] - s[i-1]);
 	}
-	out.println();
-	out.println("Avg payoff per round, averaged for all starting holes = " + format(avgAvgF) + " ~= " + approxRational(avgAvgF));
+	if (d == Double.POSITIVE_INFINITY) return 0;
+	double vMin = v[0], vMax = v[0];
+	for(double x: v) {
+	    vMin = Math.min(vMin, x);
+	    vMax = Math.max(vMax, x);
+	}
+	return 2 * (vMax - vMin + phi) / d;
     }
 
     /** Paul's 3-wall model */
@@ -549,25 +987,13 @@ public class Mousetrap {
      }
 
     /** Approximately convert a floating-point value to a rational, for use
-	in the simplex code. A kludge, of course.
+	in the simplex code. A kludge, of course. Looks for the fraction
+	with the smallest denominator (up to 1080) within the relative
+	error of 1e-6, or, if there is none, the closest one; see
+	RationalApprox for the details.
      */       
     static Rational approxRational(double x) {
-	if (x==0) return Rational.ZERO;
-	final int n0 = 360 * 3;
-	int bestn = 0;
-	double minerr = 0;
-	for(int n=1;n<= n0; n++) {
-	    double q=n*x;
-	    int iq = (int)Math.round(q);
-	    double err = Math.abs( q - iq)/Math.abs(q);
-	    if (err < 1e-6) return new Rational( iq, n);
-	    if (bestn == 0 || err < minerr) {
-		bestn = n;
-		minerr = err;
-	    }
-	}
-	int iq = (int)Math.round(bestn*x);	
-	return new Rational( iq, bestn);
+	return RationalApprox.approx(x);
     }
 
     static Rational[] approxRational(double[] x) {
@@ -621,12 +1047,25 @@ public class Mousetrap {
     }
 
 
-    static public void main(String argv[]) throws FileNotFoundException {
+    static public void main(String argv[]) throws IOException {
 
 
 	ParseConfig ht = new ParseConfig();
 	boolean mobileCat = ht.getOption("mobileCat", true);	
 	String fname = ht.getOption("out", "mousetrap.out");
+	SimplexResults.Options lpOptions = new SimplexResults.Options(ht);
+	// the number of threads for solving the local games
+	int par = ht.getOption("par", 1);
+	ForkJoinPool pool = (par > 1) ? new ForkJoinPool(par) : null;
+	int maxRounds = ht.getOption("T", 100);
+	final double eps=ht.getOptionDouble("eps", 1e-5);
+	Solver solver = ht.getOptionEnum(Solver.class, "solver", Solver.VALUE);
+	// the capacity of the cache of solved local games (0 for none)
+	int cacheSize = ht.getOption("gameCache", 0);
+	GameCache gameCache = (cacheSize > 0) ? new GameCache(cacheSize, lpOptions) : null;
+	ClosedForm closedForm = ht.getOption("closedForm", false) ? new ClosedForm() : null;
+	Verbosity verbosity = Verbosity.create(ht);
+	ResultsSink dump = ResultsSink.create(ht);
 
 	// let's always produce UNIX-style output, even when running under
 	// MS Windows
@@ -649,15 +1088,32 @@ public class Mousetrap {
 
 	File f=new File(fname);
 	System.out.println("Output will go to file " + f);
-	PrintStream out = new PrintStream(new FileOutputStream(f));
+	PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(f), 1<<16));
+	ResultsSink sink = ResultsSink.tee(new TextResultsSink(out, verbosity), dump);
 
 	for(int i=0; i<mos.length; i++) {	    
 	    out.println("============= System no. " + (i+1) + "=======================================");
 	    Mousetrap mo = mos[i];
 	    mo.constrainedPlayerIsTheAttacker = mobileCat;
-	    mo.optimize(out);
+	    mo.lpOptions = lpOptions;
+	    mo.pool = pool;
+	    mo.maxRounds = maxRounds;
+	    mo.eps = eps;
+	    mo.accel = Acceleration.create(ht);
+	    mo.gameCache = gameCache;
+	    mo.closedForm = closedForm;
+	    mo.sink = sink;
+	    if (solver == Solver.POLICY) mo.optimizePolicy();
+	    else mo.optimize();
 	}
+	sink.close();
 	out.close();
+	if (pool != null) pool.shutdown();
+	if (lpOptions.stats != null) {
+	    System.out.println("Simplex (" + lpOptions.engine + ", " + lpOptions.pivot + "): " + lpOptions.stats);
+	}
+	if (gameCache != null) System.out.println(gameCache);
+	if (closedForm != null) System.out.println(closedForm);
 
     }
    
@@ -3,6 +3,7 @@ package mousetrap;
 import java.util.*;
 import java.text.*;
 import java.io.*;
+import java.util.concurrent.ForkJoinPool;
 
 import util.ParseConfig;
 
@@ -62,45 +63,88 @@ public class Mousetrap2 extends Mousetrap {
 	 \Sum_{kl} {  p_{ij,k} q_{ij,l}  f_{kl}^{(n-1)}                  
 	</center>
 
+	<p>Since p[i][j] (as produced by pOptimize2()) can only be
+	non-zero on the holes in w[i], and q[i][j], on the holes in
+	w2[j], the sums only run over those holes. The non-zero terms
+	are added in the same order as in a loop over all k and l, so the
+	result is exactly the same.
+
+	<p>The strategies are stored in the support-indexed form, with
+	p[i][j].support = w[i] and q[i][j].support = w2[j]. The values
+	f_{ij} are stored in flat arrays (see idx()).
+
 	@param p The constrained player's play at the 1st round
 	@param q The mobile player's play at the 1st round
 	@param oldF the constrained player's aggregate expected payoff of an (n-1)-round game (the last n-1 rounds of the n-round game), already multiplied by r
+	@param f The array (of h*h elements) to put the result into;
+	it is reused from round to round, and must not be oldF
+	@return f
      */
-    double[][] newF(double[][][] p, double[][][] q, double [][] oldF) {
-	double f[][] = alloc2(h,h);
-	for(int i = 0; i<h; i++) {
+    double[] newF(SparseStrategy[][] p, SparseStrategy[][] q, double [] oldF, double[] f) {
+	// each row of f is computed by one task, so the result does
+	// not depend on the parallelism
+	forEachIndex(h, i -> {
+	    final int[] wi = w[i];
 	    for(int j = 0; j<h; j++) {
+		final double[] pij = p[i][j].values, qij = q[i][j].values;
+		final int[] w2j = w2[j];
+		// sum over the holes both players can play
 		double caught = 0;
-		for(int k=0; k<h; k++) caught +=  p[i][j][k] * q[i][j][k];
+		for(int a=0, b=0; a<wi.length && b<w2j.length; ) {
+		    if (wi[a] < w2j[b]) a++;
+		    else if (wi[a] > w2j[b]) b++;
+		    else caught +=  pij[a++] * qij[b++];
+		}
 		double s = 1.0 - phi * caught;
 
-		for(int k=0; k<h; k++) {
-		    for(int l=0; l<h; l++) {
-			s += p[i][j][k] * q[i][j][l] * oldF[k][l];
+		for(int a=0; a<wi.length; a++) {
+		    final int k0 = idx(wi[a], 0);
+		    for(int b=0; b<w2j.length; b++) {
+			s += pij[a] * qij[b] * oldF[k0 + w2j[b]];
 		    }
 		}
-		f[i][j] = s;
+		f[idx(i,j)] = s;
 	    }
-	}
+	});
 	return f;
     }
 
+    /** Describes the number of terms summed by newF() in each round,
+	compared with that of the loop over all k and l */
+    String newFWork() {
+	long full = (long)h*h*h*h, sparse = 0;
+	for(int[] wi: w) {
+	    for(int[] w2j: w2) sparse += (long)wi.length * w2j.length;
+	}
+	return "newF() sums " + sparse + " terms per round instead of " + full +
+	    " (" + String.format("%.1f", 100.0*sparse/full) + "%)";
+    }
+
+    /** The two players' mixed strategies in the local game at (i,j),
+	in the support-indexed form (see SparseStrategy), so that their
+	storage only grows with the number of holes the players can move
+	to, rather than with h.
+     */
     static class OptResults2 {
+	SparseStrategy p, q;
+	OptResults2(SparseStrategy _p, SparseStrategy _q) {
+	    p = _p;
+	    q = _q;
+	}
 	//	boolean qPat[];
-	static double[][][] assembleP(OptResults po[][]) {
-	    double p[][][] = new double[po.length][][];
+	/** Puts the attacker's strategies from po into p, which is
+	    reused from round to round */
+	static SparseStrategy[][] assembleP(OptResults2 po[][], SparseStrategy p[][]) {
 	    for(int i=0; i<po.length; i++) {
-		p[i] = new double[po[i].length][];
 		for(int j=0; j<po[i].length; j++) {	
 		    p[i][j] = po[i][j].p;
 		}
 	    }
 	    return p;
 	}
-  	static double[][][] assembleQ(OptResults po[][]) {
-	    double q[][][] = new double[po.length][][];
+	/** Puts the defender's strategies from po into q */
+  	static SparseStrategy[][] assembleQ(OptResults2 po[][], SparseStrategy q[][]) {
 	    for(int i=0; i<po.length; i++) {
-		q[i] = new double[po[i].length][];
 		for(int j=0; j<po[i].length; j++) {	
 		    q[i][j] = po[i][j].q;
 		}
@@ -119,145 +163,257 @@ public class Mousetrap2 extends Mousetrap {
 	This method works creating a generic payoff matrix, and
 	optimizing using the Simplex algorithm.
 
-	@param f f[j][k] contains future benefits for the first player (attacker) if the two players play (j,k)	
+	@param f f[idx(j,k)] contains future benefits for the first player (attacker) if the two players play (j,k)	
+     */
+    OptResults2 pOptimize2(double [] f, int w[], int w2[]) {    
+	return pOptimize2(f, w, w2, null);
+    }
+
+    /** Same as pOptimize2(f, w, w2), with a warm start for the LPs.
+	@param bases If not null, an array of two elements, in which
+	the final bases of the two players' LPs are kept from one
+	call to the next one (see SimplexResults.Bases)
      */
-    OptResults pOptimize2(double [][] f, int w[], int w2[]) {    
+    OptResults2 pOptimize2(double [] f, int w[], int w2[], SimplexResults.Bases[] bases) {    
 	final  int L1 = w.length, L2 = w2.length;
-	double[][] payoffMatrix = new double[L1][];
+	double[][] payoffMatrix = new double[L1][L2];
 	for(int i = 0; i<L1; i++) {
-	    payoffMatrix[i] = arrayExtract( f[w[i]], w2);
+	    final int k0 = idx(w[i], 0);
 	    for(int j = 0; j<L2; j++) {
 		double caught = (w[i]==w2[j] ? phi : 0.0);
-		payoffMatrix[i][j] += 1-caught;
+		payoffMatrix[i][j] = f[k0 + w2[j]] + (1-caught);
 	    }
 	}
-	double[][] trans = transpose( payoffMatrix);
-	mult(trans, -1);
-	SimplexResults mouseRes = new SimplexResults(payoffMatrix);
-	SimplexResults catRes = new SimplexResults(trans);
-	//	System.out.println("M/C: " + mouseRes.maxval + " : " + (-catRes.maxval));
-	double [] p = spreadArray(mouseRes.p, h, w);
-	double [] q = spreadArray(catRes.p, h, w2);
-	OptResults res = new OptResults(p,q);
-	return res;
+	if (closedForm != null) {
+	    double[][] pq = closedForm.check(payoffMatrix, ClosedForm.general(payoffMatrix));
+	    if (pq != null) return new OptResults2(new SparseStrategy(w, pq[0]), new SparseStrategy(w2, pq[1]));
+	}
+	OptResults game = solveMatrixGame(payoffMatrix, bases);
+	return new OptResults2(new SparseStrategy(w, game.p), new SparseStrategy(w2, game.q));
  	
     }
 
 
 
-    String matrixToString2(double [][][]p) {
-	StringBuffer s = new	StringBuffer();
+    /** Prints the strategies for all (i,j), as dense vectors of h
+	elements each.
+	@param approx If true, the values are approximated by rationals
+     */
+    String matrixToString2(SparseStrategy [][]p, boolean approx) {
+	StringBuilder s = new	StringBuilder();
 	for(int i = 0; i<h; i++) {
 	    for(int j = 0; j<h; j++) {
-		s.append(names[i] + "\t" + names[j] + ":");
-		for(int k=0; k<h; k++) s.append("\t" + format(p[i][j][k]));
-		s.append("\n");
+		s.append(names[i]).append('\t').append(names[j]).append(':');
+		final int[] support = p[i][j].support;
+		final double[] values = p[i][j].values;
+		for(int k=0, a=0; k<h; k++) {
+		    double x = 0;
+		    if (a < support.length && support[a] == k) x = values[a++];
+		    s.append('\t');
+		    if (approx) s.append(approxRational(x));
+		    else appendFormat(s, x);
+		}
+		s.append('\n');
 	    }
 	}
 	return s.toString();
     }
 
-    String matrixToString2(Rational [][][]p) {
-	StringBuffer s = new	StringBuffer();
+    /** Prints a flat array indexed by (i,j) (see idx()), one row per i */
+    String matrixToString2(double []a) {
+	StringBuilder s = new	StringBuilder();
 	for(int i = 0; i<h; i++) {
-	    for(int j = 0; j<h; j++) {
-		s.append(names[i] + "\t" + names[j] + ":");
-		for(int k=0; k<h; k++) s.append("\t" + p[i][j][k]);
-		s.append("\n");
-	    }
+	    s.append(names[i]);
+	    for(int j = 0; j<h; j++) appendFormat(s.append('\t'), a[idx(i,j)]);
+	    s.append('\n');
 	}
 	return s.toString();
     }
 
-    double[][] alloc2(int n1, int n2) {
-	double[][] f = new double[n1][];
-	for(int i = 0; i<n1; i++) f[i] = new double[n2];
-	return f;
+    /** The position of the pair of holes (i,j) in the flat (row-major)
+	arrays of h*h elements in which the values for all pairs, such
+	as f and avgF, are kept. These take less memory than double[h][h]
+	arrays, and can be reused from round to round. */
+    final int idx(int i, int j) {
+	return i*h + j;
     }
 
-    void optimize(PrintStream out, double eps) {
-	OptResults[][] po = new OptResults[h][];
+    /** If true, optimize() only solves the local games at one pair of
+	holes per orbit of the model's symmetry group (see Symmetry) */
+    boolean useSymmetry = false;
+
+    /** If not null, optimize() saves its state to this file every
+	checkpointEvery rounds (see Checkpoint) */
+    File checkpointFile = null;
+    int checkpointEvery = 10;
+    /** If not null, and the file exists, optimize() continues from the
+	checkpoint in it, rather than from round 0 */
+    File resumeFile = null;
+
+    void optimize(double eps) {
+	OptResults2[][] po = new OptResults2[h][];
 	int n=0;
-	double[][] f = alloc2(h,h);
-	double[][][] p0=null, q0=null;
-	double[][] avgF = alloc2(h,h);
+	// f, and the buffer that newF() puts its result into; f1*r is then
+	// copied into f (rather than the two being swapped), since
+	// Acceleration.update() needs both
+	double[] f = new double[h*h], f1 = new double[h*h];
+	SparseStrategy[][] p0=null, q0=null;
+	double[] avgF = new double[h*h];
+	// two sets of arrays for the strategies, used in turn, so that
+	// the previous round's ones stay available as p0 and q0
+	SparseStrategy[][][] pBuf = new SparseStrategy[2][h][h], qBuf = new SparseStrategy[2][h][h];
 
 	for(int i = 0; i<h; i++) {
-	    po[i] = new OptResults[h];
+	    po[i] = new OptResults2[h];
 	}
 
-	out.println("MODEL " + modelName);
-	out.println("Defender's efficiency phi="+ phi+", discount rate=" +r);
-	out.println("Attacker's allowed movement map:");
-	out.println(wMatrixToString(w));
-	out.println("Defender's allowed movement map:");
-	out.println(wMatrixToString(w2));
+	println("MODEL " + modelName);
+	println("Defender's efficiency phi="+ phi+", discount rate=" +r);
+	println("Attacker's allowed movement map:");
+	println(wMatrixToString(w));
+	println("Defender's allowed movement map:");
+	println(wMatrixToString(w2));
 
 	String lab1 = "Attacker";
 	String lab2 = "Defender";
 
+	// the LP bases for each (i,j) pair, kept from round to round
+	SimplexResults.Bases[][][] bases = makeBasisCache(h, h);
+
+	Symmetry sym = null;
+	if (useSymmetry) {
+	    sym = new Symmetry(w, w2, 10000);
+	    println("Found " + sym.automorphisms.size() + " non-trivial automorphisms; " + sym.reps.length + " local games to solve per round, out of " + (h*h));
+	}
+	final Symmetry sym0 = sym;
+
 	boolean conv = false;
 	double avgAvgF=0;
-	final int T=100;
-	for(; n<T && !conv; n++) {
-	    out.println("---- " + (n+1) + "-round game: ------------------");
-	    for(int i = 0; i<h; i++) {
-		for(int j = 0; j<h; j++) {
-		    po[i][j] = pOptimize2(f, w[i], w2[j]);
+	Checkpoint ck = null;
+	try {
+	    if (resumeFile != null && resumeFile.exists()) {
+		try (Checkpoint rk = new Checkpoint(resumeFile, w, w2, accel, false)) {
+		    if (rk.complete()) {
+			p0 = new SparseStrategy[h][h];
+			q0 = new SparseStrategy[h][h];
+			n = rk.read(f, avgF, p0, q0, w, w2, accel);
+			conv = rk.converged();
+			for(int ij = 0; ij<h*h; ij++) avgAvgF += avgF[ij];
+			avgAvgF /= (h*h);
+			println("Resumed from checkpoint " + resumeFile + " after " + n + " rounds" +
+				    (conv? ", at which the iteration had converged" : ""));
+		    } else {
+			println("Ignoring the incomplete checkpoint " + resumeFile);
+		    }
 		}
 	    }
-	    double p[][][] = OptResults2.assembleP(po);
-	    double q[][][] = OptResults2.assembleQ(po);
+	    if (checkpointFile != null) ck = new Checkpoint(checkpointFile, w, w2, accel, true);
+	} catch(IOException ex) {
+	    throw new UncheckedIOException(ex);
+	}
+	final int n0 = n;
 
-	    double[][] f1 = newF( p, q, f);
+	final int T=maxRounds;
+	for(; n<T && !conv; n++) {
+	    forEachIndex(sym0==null? h*h : sym0.reps.length, k -> {
+		int ij = (sym0==null)? k : sym0.reps[k];
+		int i = ij / h, j = ij % h;
+		po[i][j] = pOptimize2(f, w[i], w2[j], bases==null? null : bases[i][j]);
+	    });
+	    if (sym0 != null) sym0.fill(po, w, w2);
+	    SparseStrategy p[][] = OptResults2.assembleP(po, pBuf[n%2]);
+	    SparseStrategy q[][] = OptResults2.assembleQ(po, qBuf[n%2]);
+
+	    newF( p, q, f, f1);
 	    avgAvgF=0;
-	    for(int i = 0; i<h; i++) {
-		for(int j = 0; j<h; j++) {
-		    avgF[i][j] = f1[i][j] / (n+1);
-		    f[i][j] = f1[i][j]*r;
-		    avgAvgF += avgF[i][j];
-		}
+	    for(int ij = 0; ij<h*h; ij++) {
+		avgF[ij] = (accel==null? f1[ij] : f1[ij] + accel.offset) / (n+1);
+		f[ij] = f1[ij]*r;
+		avgAvgF += avgF[ij];
 	    }
 	    avgAvgF /= (h*h);
 
-
-	    if (p0!=null && q0!=null && infNormDiff(p0,p)<eps  && infNormDiff(q0,q)<eps) {
-		out.println("Convergence on P and Q achieved within eps=" + eps);
-		conv = true;
-	    }
-
-
-	    if (n<5 || n<100 && (n+1) % 10 == 0 || (n+1)% 100 == 0 || conv) {
-		out.print(lab1 + " plays P=\n" + matrixToString2(p));
-		out.print(lab2 + " plays Q=\n" + matrixToString2(q));	    
-	    }
-
-	    out.println(lab1+"'s avg payoff per round (hole avg="+avgAvgF+")=");
-	    for(int i = 0; i<h; i++) {
-		out.print(names[i]);
-		for(int j = 0; j<h; j++) {
-		    out.print("\t" +format(avgF[i][j]));
-		}
-		out.println();
-	    }
+	    if (accel != null) accel.update(new double[][] {f1}, new double[][] {f}, r);
+	    final boolean accelConv = accel != null && accel.converged();
+	    final boolean pqConv = p0!=null && q0!=null && SparseStrategy.infNormDiff(p0,p)<eps  && SparseStrategy.infNormDiff(q0,q)<eps;
+	    conv = accelConv || pqConv;
+
+	    // by default, every round is reported, but the strategies
+	    // only in some of them
+	    boolean reportPQ = n<5 || n<100 && (n+1) % 10 == 0 || (n+1)% 100 == 0 || conv;
+	    final int n1 = n+1;
+	    final double avg = avgAvgF;
+	    round(n, conv || n+1==T, reportPQ, (out, strategies) -> {
+		    out.println("---- " + n1 + "-round game: ------------------");
+		    if (accelConv) out.println("Convergence on the avg payoff achieved within eps=" + accel.eps);
+		    if (pqConv) out.println("Convergence on P and Q achieved within eps=" + eps);
+		    if (strategies) {
+			out.print(lab1 + " plays P=\n" + matrixToString2(p, false));
+			out.print(lab2 + " plays Q=\n" + matrixToString2(q, false));
+		    }
+		    out.println(lab1+"'s avg payoff per round (hole avg="+avg+")=");
+		    out.print(matrixToString2(avgF));
+		    if (accel != null) {
+			out.println(lab1 + "'s limit avg payoff per round (" + accel.mode + " estimate)=");
+			out.print(matrixToString2(accel.estimate[0]));
+		    }
+		});
 	    
 	    p0=p;
 	    q0=q;
+	    if (ck != null && (n+1) % checkpointEvery == 0) ck.write(n+1, conv, f, avgF, p0, q0, accel);
+	}
+	if (ck != null) {
+	    // the final state, so that the run can be continued for more rounds
+	    if (n % checkpointEvery != 0 && n > n0) ck.write(n, conv, f, avgF, p0, q0, accel);
+	    ck.close();
+	}
+	// n, rather than T, as a resumed run may have done more rounds
+	if (!conv) println("NO CONVERGENCE ACHIEVED in " + n + " rounds");
+	if (accel != null) {
+	    // the limit, rather than the running average
+	    avgAvgF=0;
+	    for(int ij = 0; ij<h*h; ij++) {
+		avgF[ij] = accel.estimate[0][ij];
+		avgAvgF += avgF[ij];
+	    }
+	    avgAvgF /= (h*h);
 	}
-	if (!conv) out.println("NO CONVERGENCE ACHIEVED in " + T + " rounds");
-	out.println("===== Approximating with rational numbers: ======");
-	out.print("Approx P=\n" + matrixToString2(approxRational(p0)));
-	out.print("Approx Q=\n" + matrixToString2(approxRational(q0)));
-	Rational[][] ravgF = approxRational(avgF);
-	out.println(lab1 + "'s approx avg payoff per round=");
+	println("===== Approximating with rational numbers: ======");
+	print("Approx P=\n" + matrixToString2(p0, true));
+	print("Approx Q=\n" + matrixToString2(q0, true));
+	Rational[] ravgF = approxRational(avgF);
+	println(lab1 + "'s approx avg payoff per round=");
+	StringBuilder sb = new StringBuilder();
+	for(int i = 0; i<h; i++) {
+	    sb.append(names[i]);
+	    for(int j = 0; j<h; j++) sb.append('\t').append(ravgF[idx(i,j)]);
+	    sb.append('\n');
+	}
+	print(sb);
+	println("Avg payoff per round, averaged for all starting holes = " + format(avgAvgF) + " ~= " + approxRational(avgAvgF));
+	dump2(p0, q0, avgF);
+	outcome = new Outcome(n, conv, avgAvgF);
+    }
+
+    /** Writes the final results to the sink, if it takes them, with
+	the states (i,j) flattened as idx(i,j) */
+    void dump2(SparseStrategy[][] p0, SparseStrategy[][] q0, double[] avgF) {
+	if (sink == null || !sink.takesFinalResults()) return;
+	String[] states = new String[h*h];
+	double[][] p = new double[h*h][], q = new double[h*h][];
 	for(int i = 0; i<h; i++) {
-	    out.print(names[i]);
 	    for(int j = 0; j<h; j++) {
-		out.print("\t" +ravgF[i][j].toString());
+		states[idx(i,j)] = names[i] + " " + names[j];
+		p[idx(i,j)] = p0[i][j].toDense(h);
+		q[idx(i,j)] = q0[i][j].toDense(h);
 	    }
-	    out.println();	    
 	}
-	out.println("Avg payoff per round, averaged for all starting holes = " + format(avgAvgF) + " ~= " + approxRational(avgAvgF));
+	try {
+	    sink.finalResults(modelName, states, names, p, q, avgF);
+	} catch(IOException ex) {
+	    throw new UncheckedIOException(ex);
+	}
     }
 
     /** Paul's 3-wall model */
@@ -377,7 +533,7 @@ public class Mousetrap2 extends Mousetrap {
     /**Usage:
        java -classpath lib/mousetrap.jar mousetrap.Mousetrap2
      */
-    static public void main(String argv[]) throws FileNotFoundException {
+    static public void main(String argv[]) throws IOException {
 
 
 	ParseConfig ht = new ParseConfig();
@@ -385,6 +541,24 @@ public class Mousetrap2 extends Mousetrap {
 	String fname = ht.getOption("out", "mousetrap.out");
 
 	final double eps=ht.getOptionDouble("eps", 1e-5);
+	SimplexResults.Options lpOptions = new SimplexResults.Options(ht);
+	// the number of threads for solving the local games
+	int par = ht.getOption("par", 1);
+	ForkJoinPool pool = (par > 1) ? new ForkJoinPool(par) : null;
+	int maxRounds = ht.getOption("T", 100);
+	boolean useSymmetry = ht.getOption("sym", false);
+	// the capacity of the cache of solved local games (0 for none)
+	int cacheSize = ht.getOption("gameCache", 0);
+	GameCache gameCache = (cacheSize > 0) ? new GameCache(cacheSize, lpOptions) : null;
+	ClosedForm closedForm = ht.getOption("closedForm", false) ? new ClosedForm() : null;
+	Verbosity verbosity = Verbosity.create(ht);
+	ResultsSink dump = ResultsSink.create(ht);
+	// the checkpoint files are named prefix.1, prefix.2, ..., one per
+	// system; by default, resumed runs keep checkpointing to the same files
+	String resume = ht.getOption("resume", null);
+	String checkpoint = ht.getOption("checkpoint", resume);
+	int checkpointEvery = ht.getOption("checkpointEvery", 10);
+	if (checkpointEvery < 1) throw new IllegalArgumentException("checkpointEvery=" + checkpointEvery + ": must be at least 1");
 
 	// let's always produce UNIX-style output, even when running under
 	// MS Windows
@@ -413,14 +587,34 @@ public class Mousetrap2 extends Mousetrap {
 
 	File f=new File(fname);
 	System.out.println("Output will go to file " + f);
-	PrintStream out = new PrintStream(new FileOutputStream(f));
+	PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(f), 1<<16));
+	ResultsSink sink = ResultsSink.tee(new TextResultsSink(out, verbosity), dump);
 
 	for(int i=0; i<mos.length; i++) {	    
 	    out.println("============= System no. " + (i+1) + "=======================================");
 	    Mousetrap2 mo = mos[i];
-	    mo.optimize(out, eps);
+	    mo.lpOptions = lpOptions;
+	    mo.pool = pool;
+	    mo.maxRounds = maxRounds;
+	    mo.useSymmetry = useSymmetry;
+	    mo.gameCache = gameCache;
+	    mo.closedForm = closedForm;
+	    mo.accel = Acceleration.create(ht);
+	    mo.sink = sink;
+	    if (checkpoint != null) mo.checkpointFile = new File(checkpoint + "." + (i+1));
+	    mo.checkpointEvery = checkpointEvery;
+	    if (resume != null) mo.resumeFile = new File(resume + "." + (i+1));
+	    System.out.println(mo.modelName + ": " + mo.newFWork());
+	    mo.optimize(eps);
 	}
+	sink.close();
 	out.close();
+	if (pool != null) pool.shutdown();
+	if (lpOptions.stats != null) {
+	    System.out.println("Simplex (" + lpOptions.engine + ", " + lpOptions.pivot + "): " + lpOptions.stats);
+	}
+	if (gameCache != null) System.out.println(gameCache);
+	if (closedForm != null) System.out.println(closedForm);
 
     }
    
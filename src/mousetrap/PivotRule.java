@@ -0,0 +1,153 @@
+package mousetrap;
+
+/** A pricing strategy for Simplex.solve(): chooses the column that
+    enters the basis at each pivot. (The leaving row is always chosen
+    by the ratio test, ties being broken by the smallest index of the
+    basic variable).
+
+    <p>A column j is eligible to enter if it improves the phase-1
+    objective (a[m+1][j] &gt; 0), or leaves it unchanged and improves the
+    objective (a[m+1][j] = 0, a[m][j] &gt; 0). The rules differ only in
+    which of the eligible columns they pick. Only BLAND is guaranteed
+    not to cycle; Simplex.solve() switches to it after a long run of
+    degenerate pivots.
+
+    <p>A new PivotRule object is created for each solve, since some
+    rules (DEVEX) keep state between pivots.
+ */
+abstract class PivotRule {
+
+    /** The available pivoting rules */
+    enum Kind {
+	/** The smallest-index rule of the original Simplex code */
+	BLAND,
+	/** The largest reduced cost (Dantzig's rule) */
+	DANTZIG,
+	/** The largest reduced cost relative to the approximate
+	    steepest-edge (Devex) reference weights */
+	DEVEX;
+
+	/** Creates a rule of this kind for solving the problem in
+	    tableau t */
+	PivotRule create(Tableau t) {
+	    switch (this) {
+	    case DANTZIG:
+		return new Dantzig();
+	    case DEVEX:
+		return new Devex(t);
+	    default:
+		return new Bland();
+	    }
+	}
+    };
+
+    /** Chooses the entering column.
+	@return The column, or -1 if no column is eligible (i.e. the
+	current basis is optimal)
+     */
+    abstract int entering(Tableau t);
+
+    /** Called just before the pivot on a[L][E] is carried out, for
+	the rules that need to update their state */
+    void pivoting(Tableau t, int L, int E) {}
+
+    /** Is column j eligible to enter the basis? */
+    static boolean eligible(Tableau t, int j) {
+	final int m = t.m;
+	return t.signum(m + 1, j) > 0 || t.signum(m + 1, j) == 0 && t.signum(m, j) > 0;
+    }
+
+    /** The row in which the reduced costs are compared: the phase-1
+	objective row m+1, if any column still improves it, or the
+	objective row m otherwise */
+    static int pricingRow(Tableau t) {
+	final int m = t.m;
+	for (int j = 0; j < t.n; j++) {
+	    if (t.signum(m + 1, j) > 0) return m + 1;
+	}
+	return m;
+    }
+
+    /** Picks, among the eligible columns, the one whose variable has
+	the smallest index */
+    static class Bland extends PivotRule {
+	int entering(Tableau t) {
+	    final int[] index = t.index;
+	    int E = -1;
+	    for (int j = 0; j < t.n; j++) {
+		if (E < 0 || index[E] > index[j]) {
+		    if (eligible(t, j)) E = j;
+		}
+	    }
+	    return E;
+	}
+    }
+
+    /** Picks the eligible column with the largest reduced cost
+	in the pricing row; ties are broken by the smallest index */
+    static class Dantzig extends PivotRule {
+	int entering(Tableau t) {
+	    final int[] index = t.index;
+	    final int r = pricingRow(t);
+	    int E = -1;
+	    for (int j = 0; j < t.n; j++) {
+		if (!eligible(t, j) || t.signum(r, j) <= 0) continue;
+		int d;
+		if (E < 0 || (d = t.compareInRow(r, j, E)) > 0 || d == 0 && index[j] < index[E]) {
+		    E = j;
+		}
+	    }
+	    return E;
+	}
+    }
+
+    /** Forrest and Goldfarb's Devex rule: picks the eligible column
+	with the largest d<sub>j</sub><sup>2</sup>/w<sub>j</sub>, where
+	d<sub>j</sub> is the reduced cost and w<sub>j</sub> is an
+	approximation of the squared norm of the edge direction, relative
+	to the initial set of non-basic variables. The weights are only
+	used for choosing among columns, and are therefore kept as
+	doubles even for an exact tableau.
+     */
+    static class Devex extends PivotRule {
+	/** w[j] is the weight of the variable in column j */
+	final double[] w;
+
+	Devex(Tableau t) {
+	    w = new double[t.n];
+	    java.util.Arrays.fill(w, 1.0);
+	}
+
+	int entering(Tableau t) {
+	    final int[] index = t.index;
+	    final int r = pricingRow(t);
+	    int E = -1;
+	    double best = 0;
+	    for (int j = 0; j < t.n; j++) {
+		if (!eligible(t, j) || t.signum(r, j) <= 0) continue;
+		double d = t.doubleValue(r, j);
+		double score = d * d / w[j];
+		if (E < 0 || score > best || score == best && index[j] < index[E]) {
+		    E = j;
+		    best = score;
+		}
+	    }
+	    return E;
+	}
+
+	void pivoting(Tableau t, int L, int E) {
+	    final double aLE = t.doubleValue(L, E);
+	    final double wE = w[E];
+	    for (int j = 0; j < t.n; j++) {
+		if (j == E) continue;
+		double ratio = t.doubleValue(L, j) / aLE;
+		double v = ratio * ratio * wE;
+		if (v > w[j]) w[j] = v;
+		if (!(w[j] < Double.POSITIVE_INFINITY)) w[j] = 1.0;
+	    }
+	    // the leaving variable takes over column E
+	    w[E] = Math.max(wE / (aLE * aLE), 1.0);
+	    if (!(w[E] < Double.POSITIVE_INFINITY)) w[E] = 1.0;
+	}
+    }
+}
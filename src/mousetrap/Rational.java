@@ -2,10 +2,23 @@ package mousetrap;
 
 import java.math.BigInteger;
 
-/** Code from https://sites.google.com/site/indy256/algo/rational */
+/** Code from https://sites.google.com/site/indy256/algo/rational
+
+    <p>The numerator and denominator are normally kept in two primitive
+    longs; the BigInteger representation is only used for values that
+    do not fit into a long. Every arithmetic operation is first
+    attempted with Math.multiplyExact/addExact, and is redone in
+    BigInteger arithmetic if that overflows. The representation is
+    canonical (a value that fits into longs is always stored in the
+    longs), so equals() and hashCode() can look at either form directly.
+*/
 public class Rational implements Comparable<Rational> {
-  final BigInteger num;
-  final BigInteger den;
+  /** The numerator and denominator, if the value fits into longs */
+  final long n, d;
+  /** The numerator and denominator, if the value does not fit into longs; null otherwise */
+  final BigInteger bnum, bden;
+
+  private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
 
   public static final Rational ZERO = new Rational(0);
   public static final Rational ONE = new Rational(1);
@@ -13,12 +26,34 @@ public class Rational implements Comparable<Rational> {
   public static final Rational NEGATIVE_INFINITY = new Rational(-1, 0);
 
   public Rational(long num) {
-    this.num = BigInteger.valueOf(num);
-    this.den = BigInteger.ONE;
+    this(num, 1);
   }
 
   public Rational(long num, long den) {
-    this(BigInteger.valueOf(num), BigInteger.valueOf(den));
+    if (num == Long.MIN_VALUE || den == Long.MIN_VALUE) {
+      // negating these would overflow
+      Rational r = new Rational(BigInteger.valueOf(num), BigInteger.valueOf(den));
+      this.n = r.n;
+      this.d = r.d;
+      this.bnum = r.bnum;
+      this.bden = r.bden;
+      return;
+    }
+    // reduce
+    if (den != 1 && den != -1) {
+      long gcd = gcd(num, den);
+      if (gcd != 0 && gcd != 1) {
+        num /= gcd;
+        den /= gcd;
+      }
+    }
+    if (den < 0) {
+      num = -num;
+      den = -den;
+    }
+    this.n = num;
+    this.d = den;
+    this.bnum = this.bden = null;
   }
 
   public Rational(BigInteger num, BigInteger den) {
@@ -34,65 +69,200 @@ public class Rational implements Comparable<Rational> {
       num = num.negate();
       den = den.negate();
     }
-    this.num = num;
-    this.den = den;
+    if (fitsLong(num) && fitsLong(den)) {
+      this.n = num.longValue();
+      this.d = den.longValue();
+      this.bnum = this.bden = null;
+    } else {
+      this.n = this.d = 0;
+      this.bnum = num;
+      this.bden = den;
+    }
+  }
+
+  /** True if x can be stored in a long whose negation is also a long */
+  private static boolean fitsLong(BigInteger x) {
+    return x.bitLength() < 64 && !x.equals(LONG_MIN);
+  }
+
+  /** Euclid's algorithm; the result is non-negative */
+  private static long gcd(long a, long b) {
+    a = Math.abs(a);
+    b = Math.abs(b);
+    while (b != 0) {
+      long t = a % b;
+      a = b;
+      b = t;
+    }
+    return a;
+  }
+
+  /** The exact value of a (finite) double, which is always a dyadic
+      rational: an integer mantissa times a power of two.
+   */
+  public static Rational valueOf(double x) {
+    if (Double.isNaN(x) || Double.isInfinite(x)) {
+      throw new IllegalArgumentException("Cannot convert " + x + " to a Rational");
+    }
+    if (x == 0) return ZERO;
+    long bits = Double.doubleToLongBits(x);
+    int exp = (int) ((bits >> 52) & 0x7ff);
+    long mantissa = bits & ((1L << 52) - 1);
+    if (exp == 0) {
+      exp = 1; // subnormal
+    } else {
+      mantissa |= 1L << 52;
+    }
+    exp -= 1075; // x = mantissa * 2^exp
+    int tz = Long.numberOfTrailingZeros(mantissa);
+    mantissa >>= tz;
+    exp += tz;
+    if (bits < 0) mantissa = -mantissa;
+    return (exp >= 0) ? new Rational(BigInteger.valueOf(mantissa).shiftLeft(exp), BigInteger.ONE) :
+      powerOfTwo(exp).mul(new Rational(mantissa));
+  }
+
+  /** 2<sup>k</sup>, for any integer k */
+  public static Rational powerOfTwo(int k) {
+    if (k >= 0) {
+      return (k < 62) ? new Rational(1L << k) : new Rational(BigInteger.ONE.shiftLeft(k), BigInteger.ONE);
+    } else {
+      return (k > -62) ? new Rational(1, 1L << -k) : new Rational(BigInteger.ONE, BigInteger.ONE.shiftLeft(-k));
+    }
+  }
+
+  /** If the denominator is a power of two, 2<sup>k</sup>, returns k;
+      otherwise, -1 */
+  int dyadicExponent() {
+    if (bnum == null) {
+      return (Long.bitCount(d) == 1) ? Long.numberOfTrailingZeros(d) : -1;
+    }
+    return (bden.bitCount() == 1) ? bden.getLowestSetBit() : -1;
+  }
+
+  /** True if this value is stored in the BigInteger form */
+  boolean isBig() {
+    return bnum != null;
+  }
+
+  BigInteger numerator() {
+    return bnum != null ? bnum : BigInteger.valueOf(n);
+  }
+
+  BigInteger denominator() {
+    return bden != null ? bden : BigInteger.valueOf(d);
   }
 
   public Rational add(Rational r) {
-    return new Rational(num.multiply(r.den).add(r.num.multiply(den)), den.multiply(r.den));
+    if (bnum == null && r.bnum == null) {
+      try {
+        if (d == r.d && d != 0) {
+          return new Rational(Math.addExact(n, r.n), d);
+        }
+        return new Rational(Math.addExact(Math.multiplyExact(n, r.d), Math.multiplyExact(r.n, d)),
+            Math.multiplyExact(d, r.d));
+      } catch (ArithmeticException ex) {
+        // overflow; fall through to BigInteger
+      }
+    }
+    BigInteger num = numerator(), den = denominator(), rnum = r.numerator(), rden = r.denominator();
+    return new Rational(num.multiply(rden).add(rnum.multiply(den)), den.multiply(rden));
   }
 
   public Rational sub(Rational r) {
-    return new Rational(num.multiply(r.den).subtract(r.num.multiply(den)), den.multiply(r.den));
+    if (bnum == null && r.bnum == null) {
+      try {
+        if (d == r.d && d != 0) {
+          return new Rational(Math.subtractExact(n, r.n), d);
+        }
+        return new Rational(Math.subtractExact(Math.multiplyExact(n, r.d), Math.multiplyExact(r.n, d)),
+            Math.multiplyExact(d, r.d));
+      } catch (ArithmeticException ex) {
+        // overflow; fall through to BigInteger
+      }
+    }
+    BigInteger num = numerator(), den = denominator(), rnum = r.numerator(), rden = r.denominator();
+    return new Rational(num.multiply(rden).subtract(rnum.multiply(den)), den.multiply(rden));
   }
 
   public Rational mul(Rational r) {
-    return new Rational(num.multiply(r.num), den.multiply(r.den));
+    if (bnum == null && r.bnum == null) {
+      if (n == 0 && d != 0 && r.d != 0) return ZERO;
+      try {
+        return new Rational(Math.multiplyExact(n, r.n), Math.multiplyExact(d, r.d));
+      } catch (ArithmeticException ex) {
+        // overflow; fall through to BigInteger
+      }
+    }
+    return new Rational(numerator().multiply(r.numerator()), denominator().multiply(r.denominator()));
   }
 
   public Rational div(Rational r) {
-    return new Rational(num.multiply(r.den), den.multiply(r.num));
+    if (bnum == null && r.bnum == null) {
+      try {
+        return new Rational(Math.multiplyExact(n, r.d), Math.multiplyExact(d, r.n));
+      } catch (ArithmeticException ex) {
+        // overflow; fall through to BigInteger
+      }
+    }
+    return new Rational(numerator().multiply(r.denominator()), denominator().multiply(r.numerator()));
   }
 
   public Rational negate() {
-    return new Rational(num.negate(), den);
+    return bnum == null ? new Rational(-n, d) : new Rational(bnum.negate(), bden);
   }
 
   public Rational inverse() {
-    return new Rational(den, num);
+    return bnum == null ? new Rational(d, n) : new Rational(bden, bnum);
   }
 
   public Rational abs() {
-    return new Rational(num.abs(), den);
+    return bnum == null ? new Rational(Math.abs(n), d) : new Rational(bnum.abs(), bden);
   }
 
   public int signum() {
-    return num.signum();
+    return bnum == null ? Long.signum(n) : bnum.signum();
   }
 
   public double doubleValue() {
-    return num.doubleValue() / den.doubleValue();
+    return bnum == null ? (double) n / (double) d : bnum.doubleValue() / bden.doubleValue();
   }
 
   public long longValue() {
-    return num.longValue() / den.longValue();
+    return bnum == null ? n / d : bnum.longValue() / bden.longValue();
   }
 
   public int compareTo(Rational other) {
-    return (num.multiply(other.den).compareTo(other.num.multiply(den)));
+    if (bnum == null && other.bnum == null) {
+      if (d == other.d && d != 0) {
+        return Long.compare(n, other.n);
+      }
+      try {
+        return Long.compare(Math.multiplyExact(n, other.d), Math.multiplyExact(other.n, d));
+      } catch (ArithmeticException ex) {
+        // overflow; fall through to BigInteger
+      }
+    }
+    return (numerator().multiply(other.denominator()).compareTo(other.numerator().multiply(denominator())));
   }
 
   public boolean equals(Object obj) {
-    return num.equals(((Rational) obj).num) && den.equals(((Rational) obj).den);
+    Rational r = (Rational) obj;
+    if (bnum == null) {
+      return r.bnum == null && n == r.n && d == r.d;
+    }
+    return r.bnum != null && bnum.equals(r.bnum) && bden.equals(r.bden);
   }
 
   public int hashCode() {
-    return num.hashCode() * 31 + den.hashCode();
+    return bnum == null ? Long.hashCode(n) * 31 + Long.hashCode(d) : bnum.hashCode() * 31 + bden.hashCode();
   }
 
   public String toString() {
-      return num.equals(BigInteger.ZERO)? "0" :
-	  num + "/" + den;
+    if (bnum == null) {
+      return n == 0 ? "0" : n + "/" + d;
+    }
+    return bnum + "/" + bden;
   }
 
   // Usage example
@@ -101,5 +271,18 @@ public class Rational implements Comparable<Rational> {
     Rational b = new Rational(1, 6);
     Rational c = new Rational(1, 2);
     System.out.println(true == c.equals(a.add(b)));
+
+    // overflow into BigInteger, and back
+    Rational big = new Rational(Long.MAX_VALUE / 3, 7).mul(new Rational(1000, 11));
+    System.out.println(big.isBig());
+    System.out.println(false == big.div(new Rational(1000, 11)).isBig());
+    System.out.println(new Rational(Long.MAX_VALUE / 3, 7).equals(big.div(new Rational(1000, 11))));
+    System.out.println(big.compareTo(new Rational(Long.MAX_VALUE)) > 0);
+    System.out.println(new Rational(Long.MIN_VALUE, -2).equals(new Rational(1L << 62)));
+
+    // exact conversion of doubles
+    System.out.println(new Rational(-3, 8).equals(valueOf(-0.375)));
+    System.out.println(valueOf(0.1).doubleValue() == 0.1 && valueOf(0.1).dyadicExponent() == 55);
+    System.out.println(valueOf(1e300).doubleValue() == 1e300 && valueOf(Double.MIN_VALUE).dyadicExponent() == 1074);
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,151 @@
+package mousetrap;
+
+import java.util.*;
+
+/** Approximation of floating-point values by rationals with small
+    denominators, for use in the simplex code (see
+    Mousetrap.approxRational()).
+
+    <p>The original method, bruteForce(), tries every denominator n from 1
+    to MAX_DEN, and returns the first fraction round(n*x)/n whose
+    relative error is below TOL, or, if there is none, the one with
+    the smallest error. approx() gives the same results, but only
+    looks at the denominators that can possibly be the answer. Both
+    the first fraction within the tolerance and the best fraction
+    overall are best approximations of the first kind, i.e. convergents
+    or semiconvergents of the continued fraction expansion of x
+    (equivalently, nodes of the Stern-Brocot tree on the path to x). The
+    semiconvergents between two consecutive convergents get closer and
+    closer to x, so the first one within the tolerance is found by a
+    binary search. Thus the work is O(log MAX_DEN) instead of
+    O(MAX_DEN). The errors of the candidate denominators are computed
+    with exactly the same expression as in bruteForce().
+ */
+class RationalApprox {
+    /** The largest denominator allowed */
+    static final int MAX_DEN = 360 * 3;
+    /** The relative error at which an approximation is accepted */
+    static final double TOL = 1e-6;
+
+    /** The relative error of round(n*x)/n as an approximation of x,
+	computed in the same way as in bruteForce() */
+    private static double err(double x, int n) {
+	double q=n*x;
+	int iq = (int)Math.round(q);
+	return Math.abs( q - iq)/Math.abs(q);
+    }
+
+    /** Approximately converts a floating-point value to a rational, in
+	the same way as bruteForce(), using the continued fraction
+	expansion of x.
+     */
+    static Rational approx(double x) {
+	if (x==0) return Rational.ZERO;
+	if (!(Math.abs(x) * MAX_DEN < Integer.MAX_VALUE)) {
+	    // NaN, infinity, or so large that round(n*x) overflows
+	    return bruteForce(x);
+	}
+	// q0, q1 are the denominators of the two most recent convergents;
+	// initially, those of the "convergents" 0/1 and 1/0
+	long q0 = 1, q1 = 0;
+	double r = Math.abs(x);
+	int bestn = 0;
+	double minerr = 0;
+	while(true) {
+	    double a = Math.floor(r);
+	    // The candidates are q0 + t*q1, t=1..a, the last one being
+	    // the next convergent. (For the first term, q1=0, and the only
+	    // candidate is 1).
+	    long tmax = (q1 == 0) ? 1 : (long)Math.min(a, (double)((MAX_DEN - q0) / q1));
+	    if (q1 > 0 && a < 1) break; // can only happen through rounding errors
+	    if (tmax >= 1) {
+		int nmax = (int)(q0 + tmax * q1);
+		double e = err(x, nmax);
+		if (e < TOL) {
+		    // binary search for the first candidate within tolerance
+		    long lo = 1, hi = tmax;
+		    while(lo < hi) {
+			long mid = (lo + hi) >>> 1;
+			if (err(x, (int)(q0 + mid * q1)) < TOL) hi = mid;
+			else lo = mid + 1;
+		    }
+		    int n = (int)(q0 + lo * q1);
+		    return new Rational( (int)Math.round(n*x), n);
+		}
+		if (bestn == 0 || e < minerr || e == minerr && nmax < bestn) {
+		    bestn = nmax;
+		    minerr = e;
+		}
+	    }
+	    if (q1 > 0 && tmax < a) break; // the next convergent is beyond MAX_DEN
+	    long q2 = (q1 == 0) ? 1 : q0 + (long)a * q1;
+	    q0 = q1;
+	    q1 = q2;
+	    double frac = r - a;
+	    if (frac == 0 || q1 > MAX_DEN) break; // x is exactly a convergent
+	    r = 1 / frac;
+	}
+	int iq = (int)Math.round(bestn*x);
+	return new Rational( iq, bestn);
+    }
+
+    /** The original method: tries every denominator from 1 to MAX_DEN
+     */
+    static Rational bruteForce(double x) {
+	if (x==0) return Rational.ZERO;
+	final int n0 = MAX_DEN;
+	int bestn = 0;
+	double minerr = 0;
+	for(int n=1;n<= n0; n++) {
+	    double q=n*x;
+	    int iq = (int)Math.round(q);
+	    double err = Math.abs( q - iq)/Math.abs(q);
+	    if (err < TOL) return new Rational( iq, n);
+	    if (bestn == 0 || err < minerr) {
+		bestn = n;
+		minerr = err;
+	    }
+	}
+	int iq = (int)Math.round(bestn*x);
+	return new Rational( iq, bestn);
+    }
+
+    /** Compares approx() with bruteForce() on random values of
+	various kinds, and reports the number of mismatches */
+    public static void main(String[] argv) {
+	Random rand = new Random(1);
+	int mismatches = 0, tests = 0;
+	for(int k=0; k<1000000; k++) {
+	    double x;
+	    switch (k % 4) {
+	    case 0: // arbitrary values
+		x = (rand.nextDouble() - 0.5) * Math.pow(10, rand.nextInt(9) - 4);
+		break;
+	    case 1: // fractions with small denominators
+		x = (double)(rand.nextInt(20001) - 10000) / (1 + rand.nextInt(2000));
+		break;
+	    case 2: // the same, with some noise
+		x = (double)(rand.nextInt(20001) - 10000) / (1 + rand.nextInt(2000)) +
+		    rand.nextGaussian() * Math.pow(10, -3 - rand.nextInt(8));
+		break;
+	    default: // differences of fractions, as in the payoff matrices
+		x = (double)rand.nextInt(1000) / (1 + rand.nextInt(100)) -
+		    (double)rand.nextInt(1000) / (1 + rand.nextInt(100));
+	    }
+	    tests++;
+	    Rational a = approx(x), b = bruteForce(x);
+	    if (!a.equals(b)) {
+		if (mismatches < 10) System.out.println("x=" + x + ": " + a + " vs. " + b);
+		mismatches++;
+	    }
+	}
+	System.out.println(tests + " tests, " + mismatches + " mismatches");
+	long t0 = System.nanoTime();
+	double s = 0;
+	for(int k=0; k<200000; k++) s += approx(rand.nextDouble()).doubleValue();
+	long t1 = System.nanoTime();
+	for(int k=0; k<200000; k++) s += bruteForce(rand.nextDouble()).doubleValue();
+	long t2 = System.nanoTime();
+	System.out.println("Time per call: approx() " + (t1-t0)/200000 + " ns, bruteForce() " + (t2-t1)/200000 + " ns");
+    }
+}
@@ -0,0 +1,74 @@
+package mousetrap;
+
+import java.util.*;
+
+/** The tableau of the original Simplex.simplex() code, with every
+    entry stored as a Rational.
+ */
+class RationalTableau extends Tableau {
+    final Rational[][] a;
+
+    /** Sets up the tableau for the problem max c*x such that A*x &lt;= b, x &gt;= 0 */
+    RationalTableau(Rational[][] A, Rational[] b, Rational[] c) {
+	super(A.length, A[0].length + 1);
+	a = new Rational[m + 2][n + 1];
+	load(A, b, c);
+    }
+
+    void load(Rational[][] A, Rational[] b, Rational[] c) {
+	resetIndex();
+	for (Rational[] a1 : a) {
+	    Arrays.fill(a1, Rational.ZERO);
+	}
+	for (int i = 0; i < m; i++) {
+	    for (int j = 0; j < n - 1; j++) {
+		a[i][j] = A[i][j].negate();
+	    }
+	    a[i][n - 1] = Rational.ONE;
+	    a[i][n] = b[i];
+	}
+	for (int j = 0; j < n - 1; j++) {
+	    a[m][j] = c[j];
+	}
+	a[m + 1][n - 1] = Rational.ONE.negate();
+    }
+
+    int signum(int i, int j) {
+	return a[i][j].signum();
+    }
+
+    int compare(int i, int k, int j) {
+	return a[i][j].compareTo(a[k][j]);
+    }
+
+    int compareInRow(int i, int j, int k) {
+	return a[i][j].compareTo(a[i][k]);
+    }
+
+    int compareRatios(int i, int k, int E) {
+	return a[i][n].div(a[i][E]).sub(a[k][n].div(a[k][E])).signum();
+    }
+
+    void pivot(int L, int E) {
+	a[L][E] = a[L][E].inverse();
+	for (int j = 0; j <= n; j++) {
+	    if (j != E) {
+		a[L][j] = a[L][j].mul(a[L][E].negate());
+	    }
+	}
+	for (int i = 0; i <= m + 1; i++) {
+	    if (i != L) {
+		for (int j = 0; j <= n; j++) {
+		    if (j != E) {
+			a[i][j] = a[i][j].add(a[L][j].mul(a[i][E]));
+		    }
+		}
+		a[i][E] = a[i][E].mul(a[L][E]);
+	    }
+	}
+    }
+
+    Rational value(int i, int j) {
+	return a[i][j];
+    }
+}
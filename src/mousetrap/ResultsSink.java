@@ -0,0 +1,121 @@
+package mousetrap;
+
+import java.io.*;
+
+import util.ParseConfig;
+
+/** Receives the results of Mousetrap.optimize(),
+    Mousetrap.optimizePolicy() and Mousetrap2.optimize() for each model.
+    The text report is one sink (TextResultsSink), which receives the
+    report text and the rounds of the iteration; the others (CSV,
+    binary) ignore these, and only record the final results, in a form
+    that is easy for other programs to read. Several sinks can be
+    combined with tee(). In finalResults(), the strategies are given
+    as dense matrices, with one row per state of the game (a hole in
+    Mousetrap, a pair of holes in Mousetrap2) and one column per hole.
+ */
+interface ResultsSink extends Closeable {
+    /** The available formats */
+    enum Format {
+	/** No dump */
+	NONE,
+	/** A text file of comma-separated values (see CsvResultsSink) */
+	CSV,
+	/** A binary file (see BinaryResultsSink) */
+	BINARY
+    };
+
+    /** Writes the report of one round of the iteration (see round()) */
+    interface Round {
+	/** @param strategies Whether to include the players' strategies */
+	void print(PrintStream out, boolean strategies);
+    }
+
+    /** Text for the report, such as the model's description, remarks on
+	the progress of the iteration, and the final results with their
+	rational approximations, which the text sink writes as it is */
+    default void text(String s) {}
+
+    /** One round of the iteration, which the text sink reports unless
+	its Verbosity skips the round.
+	@param n The round (numbered from 0)
+	@param last True if no more rounds follow
+	@param strategies Whether, by default (i.e. with no Verbosity),
+	the strategies are included in the report of this round
+	@param report Writes the report; only called if the round is
+	reported
+     */
+    default void round(int n, boolean last, boolean strategies, Round report) {}
+
+    /** Whether finalResults() is of any use; if not, the caller
+	need not assemble its dense arrays */
+    default boolean takesFinalResults() {
+	return true;
+    }
+
+    /** Records the results for a model.
+	@param model The model's name
+	@param states The labels of the states (the rows of p and q)
+	@param holes The labels of the holes (the columns of p and q)
+	@param p The constrained player's (or the attacker's) strategy in each state
+	@param q The other player's strategy in each state
+	@param avgF The average payoff per round for each starting state
+     */
+    void finalResults(String model, String[] states, String[] holes, double[][] p, double[][] q, double[] avgF) throws IOException;
+
+    /** Creates the sink specified by the options dump (see Format)
+	and dumpFile, or returns null if none is requested */
+    static ResultsSink create(ParseConfig ht) throws IOException {
+	Format format = ht.getOptionEnum(Format.class, "dump", Format.NONE);
+	if (format == Format.NONE) return null;
+	return open(format, new File(ht.getOption("dumpFile", "mousetrap" + extension(format))));
+    }
+
+    /** A sink that passes everything to both a and b; either of them
+	may be null, and then the other one is returned */
+    static ResultsSink tee(ResultsSink a, ResultsSink b) {
+	if (a == null) return b;
+	if (b == null) return a;
+	return new ResultsSink() {
+	    public void text(String s) {
+		a.text(s);
+		b.text(s);
+	    }
+	    public void round(int n, boolean last, boolean strategies, Round report) {
+		a.round(n, last, strategies, report);
+		b.round(n, last, strategies, report);
+	    }
+	    public boolean takesFinalResults() {
+		return a.takesFinalResults() || b.takesFinalResults();
+	    }
+	    public void finalResults(String model, String[] states, String[] holes, double[][] p, double[][] q, double[] avgF) throws IOException {
+		if (a.takesFinalResults()) a.finalResults(model, states, holes, p, q, avgF);
+		if (b.takesFinalResults()) b.finalResults(model, states, holes, p, q, avgF);
+	    }
+	    public void close() throws IOException {
+		try {
+		    a.close();
+		} finally {
+		    b.close();
+		}
+	    }
+	};
+    }
+
+    /** Creates a sink of the specified format, writing to the file f */
+    static ResultsSink open(Format format, File f) throws IOException {
+	switch (format) {
+	case CSV:
+	    return new CsvResultsSink(f);
+	case BINARY:
+	    return new BinaryResultsSink(f);
+	default:
+	    return null;
+	}
+    }
+
+    /** The usual file name extension for the format */
+    static String extension(Format format) {
+	return (format == Format.BINARY) ? ".bin" : ".csv";
+    }
+}
@@ -8,91 +8,491 @@ import java.util.*;
  */
 public class Simplex {
 
+  /** Possible outcomes of solve() */
+  static final int OPTIMAL = 0, UNBOUNDED = 1, INFEASIBLE = 2;
+
   // returns max c*x such that A*x <= b, x >= 0
   public static Rational simplex(Rational[][] A, Rational[] b, Rational[] c, Rational[] x) {
-    int m = A.length;
-    int n = A[0].length + 1;
-    int[] index = new int[n + m];
-    for (int i = 0; i < n + m; i++) {
-      index[i] = i;
+    return simplex(A, b, c, x, null);
+  }
+
+  /** Same as simplex(A, b, c, x), but, if y is not null, also puts
+      the optimal dual values (the multipliers of the constraints A*x &lt;= b,
+      which are the optimal solution of min b*y such that
+      A<sup>T</sup>*y &ge; c, y &ge; 0) into y.
+   */
+  public static Rational simplex(Rational[][] A, Rational[] b, Rational[] c, Rational[] x, Rational[] y) {
+    return simplex(A, b, c, x, y, null);
+  }
+
+  /** Same as simplex(A, b, c, x, y), but with a warm start.
+      @param basis If not null, an array of length A.length+A[0].length+1.
+      On entry, unless basis[0] is -1, it should contain the index[]
+      permutation (see Tableau.index) from an earlier solution of a
+      problem of the same size, and the solution will start from that
+      basis, if it is still primal feasible. On return, it contains the
+      final basis of this solution.
+   */
+  public static Rational simplex(Rational[][] A, Rational[] b, Rational[] c, Rational[] x, Rational[] y, int[] basis) {
+    return simplex(A, b, c, x, y, basis, PivotRule.Kind.BLAND, null);
+  }
+
+  /** Same as simplex(A, b, c, x, y, basis), with the specified
+      pivoting rule.
+      @param stats If not null, the pivot count and the time of this
+      solve are added to it
+   */
+  public static Rational simplex(Rational[][] A, Rational[] b, Rational[] c, Rational[] x, Rational[] y, int[] basis,
+                                 PivotRule.Kind rule, SimplexStats stats) {
+    RationalTableau t = new RationalTableau(A, b, c);
+    return result(solve(t, basis, A, b, c, rule, stats), t, x, y);
+  }
+
+  /** Same as simplex(), but uses fraction-free integer pivoting (see
+      IntegerTableau) instead of Rational arithmetic. The pivots carried
+      out are exactly the same, and so are the results.
+   */
+  public static Rational simplexFractionFree(Rational[][] A, Rational[] b, Rational[] c, Rational[] x) {
+    return simplexFractionFree(A, b, c, x, null, null);
+  }
+
+  public static Rational simplexFractionFree(Rational[][] A, Rational[] b, Rational[] c, Rational[] x, Rational[] y, int[] basis) {
+    return simplexFractionFree(A, b, c, x, y, basis, PivotRule.Kind.BLAND, null);
+  }
+
+  public static Rational simplexFractionFree(Rational[][] A, Rational[] b, Rational[] c, Rational[] x, Rational[] y, int[] basis,
+                                             PivotRule.Kind rule, SimplexStats stats) {
+    IntegerTableau t = new IntegerTableau(A, b, c);
+    return result(solve(t, basis, A, b, c, rule, stats), t, x, y);
+  }
+
+  /** Same as simplex(), but the tableau is stored as sparse rows (see
+      SparseRationalTableau), so that pivots skip the zero entries. The
+      pivots carried out are exactly the same, and so are the results.
+   */
+  public static Rational simplexSparse(Rational[][] A, Rational[] b, Rational[] c, Rational[] x) {
+    return simplexSparse(A, b, c, x, null, null, PivotRule.Kind.BLAND, null);
+  }
+
+  public static Rational simplexSparse(Rational[][] A, Rational[] b, Rational[] c, Rational[] x, Rational[] y, int[] basis,
+                                       PivotRule.Kind rule, SimplexStats stats) {
+    SparseRationalTableau t = new SparseRationalTableau(A, b, c);
+    return result(solve(t, basis, A, b, c, rule, stats), t, x, y);
+  }
+
+  /** Same as simplex(), but the pivoting is done in double arithmetic
+      (see DoubleTableau). The final basis is then checked, once, in
+      exact arithmetic by verifyBasis(); only if this check fails is
+      the problem solved again with simplex(). Thus the results are
+      always exact.
+   */
+  public static Rational simplexDouble(Rational[][] A, Rational[] b, Rational[] c, Rational[] x) {
+    return simplexDouble(A, b, c, x, null, null);
+  }
+
+  public static Rational simplexDouble(Rational[][] A, Rational[] b, Rational[] c, Rational[] x, Rational[] y, int[] basis) {
+    return simplexDouble(A, b, c, x, y, basis, PivotRule.Kind.BLAND, null);
+  }
+
+  public static Rational simplexDouble(Rational[][] A, Rational[] b, Rational[] c, Rational[] x, Rational[] y, int[] basis,
+                                       PivotRule.Kind rule, SimplexStats stats) {
+    // both attempts are counted as one LP (see SimplexStats.recordAsOne())
+    SimplexStats attempts = (stats == null) ? null : new SimplexStats();
+    DoubleTableau t = new DoubleTableau(A, b, c);
+    int status = solve(t, basis, A, b, c, rule, attempts);
+    if (status != UNBOUNDED) {
+      Rational[] value = new Rational[1];
+      if (verifyBasis(A, b, c, t.index, status, x, y, value)) {
+        if (stats != null) stats.recordAsOne(attempts);
+        return value[0];
+      }
     }
-    Rational[][] a = new Rational[m + 2][n + 1];
-    for (Rational[] a1 : a) {
-      Arrays.fill(a1, Rational.ZERO);
+    Rational v = simplex(A, b, c, x, y, basis, rule, attempts);
+    if (stats != null) stats.recordAsOne(attempts);
+    return v;
+  }
+
+  /** Checks, in exact arithmetic, whether the basis described by
+      index[] (in the same format as Tableau.index) is an optimal
+      basis for the problem max c*x such that A*x &lt;= b, x &gt;= 0
+      (when status=OPTIMAL) or proves that the problem has no
+      feasible solutions (when status=INFEASIBLE). The latter is the
+      case if the basis is optimal for the phase-1 problem
+      max -x0 such that A*x - x0 &lt;= b, x, x0 &gt;= 0, and x0 &gt; 0 in it.
+
+      @param x If not null, and the basis is verified as optimal, the
+      optimal solution is placed here
+      @param y If not null, and the basis is verified as optimal, the
+      optimal dual values are placed here
+      @param value If the basis is verified as optimal, the optimum
+      of c*x is placed into value[0]
+      @return true if the check was successful
+   */
+  static boolean verifyBasis(Rational[][] A, Rational[] b, Rational[] c, int[] index,
+                             int status, Rational[] x, Rational[] y, Rational[] value) {
+    final int m = A.length, n = A[0].length + 1;
+    final boolean phase1 = (status == INFEASIBLE);
+    // Variables: 0..n-2 are x[], n-1 is the artificial x0, n..n+m-1 are slacks
+    Rational[][] B = new Rational[m][m];
+    Rational[] cB = new Rational[m];
+    boolean[] isBasic = new boolean[n + m];
+    for (int k = 0; k < m; k++) {
+      int v = index[n + k];
+      isBasic[v] = true;
+      if (v == n - 1 && !phase1) return false;
+      for (int i = 0; i < m; i++) {
+        B[i][k] = column(A, n, v, i);
+      }
+      cB[k] = phase1 ? (v == n - 1 ? Rational.ONE.negate() : Rational.ZERO) :
+        (v < n - 1 ? c[v] : Rational.ZERO);
     }
-    int L = m;
+    // primal values: B*z = b
+    Rational[] z = solveLinear(B, b, false);
+    if (z == null) return false;
+    for (int k = 0; k < m; k++) {
+      if (z[k].signum() < 0) return false;
+    }
+    // dual values: B^T*u = cB
+    Rational[] u = solveLinear(B, cB, true);
+    if (u == null) return false;
+    // reduced costs of the non-basic variables must be non-positive
+    for (int v = 0; v < n + m; v++) {
+      if (isBasic[v] || v == n - 1 && !phase1) continue;
+      Rational d = phase1 ? (v == n - 1 ? Rational.ONE.negate() : Rational.ZERO) :
+        (v < n - 1 ? c[v] : Rational.ZERO);
+      for (int i = 0; i < m; i++) {
+        Rational a = column(A, n, v, i);
+        if (a.signum() != 0) d = d.sub(u[i].mul(a));
+      }
+      if (d.signum() > 0) return false;
+    }
+    if (phase1) {
+      // infeasible iff x0 stays positive at the phase-1 optimum
+      for (int k = 0; k < m; k++) {
+        if (index[n + k] == n - 1) return z[k].signum() > 0;
+      }
+      return false;
+    }
+    Rational opt = Rational.ZERO;
+    for (int k = 0; k < m; k++) {
+      opt = opt.add(cB[k].mul(z[k]));
+    }
+    value[0] = opt;
+    if (x != null) {
+      Arrays.fill(x, Rational.ZERO);
+      for (int k = 0; k < m; k++)
+        if (index[n + k] < n - 1)
+          x[index[n + k]] = z[k];
+    }
+    if (y != null) {
+      System.arraycopy(u, 0, y, 0, m);
+    }
+    return true;
+  }
+
+  /** The i-th element of the column of the constraint matrix
+      [A | -e | I] corresponding to variable v */
+  private static Rational column(Rational[][] A, int n, int v, int i) {
+    if (v < n - 1) return A[i][v];
+    if (v == n - 1) return Rational.ONE.negate();
+    return (v - n == i) ? Rational.ONE : Rational.ZERO;
+  }
+
+  /** Solves B*z = r (or B^T*z = r) by Gaussian elimination.
+      @return The solution, or null if B is singular */
+  static Rational[] solveLinear(Rational[][] B, Rational[] r, boolean transpose) {
+    final int m = r.length;
+    Rational[][] a = new Rational[m][m + 1];
     for (int i = 0; i < m; i++) {
-      for (int j = 0; j < n - 1; j++) {
-        a[i][j] = A[i][j].negate();
+      for (int k = 0; k < m; k++) {
+        a[i][k] = transpose ? B[k][i] : B[i][k];
       }
-      a[i][n - 1] = Rational.ONE;
-      a[i][n] = b[i];
-      if (a[L][n].compareTo(a[i][n]) > 0) {
-        L = i;
+      a[i][m] = r[i];
+    }
+    for (int k = 0; k < m; k++) {
+      int p = k;
+      while (p < m && a[p][k].signum() == 0) p++;
+      if (p == m) return null;
+      Rational[] tmp = a[p];
+      a[p] = a[k];
+      a[k] = tmp;
+      for (int i = 0; i < m; i++) {
+        if (i == k || a[i][k].signum() == 0) continue;
+        Rational f = a[i][k].div(a[k][k]);
+        for (int j = k; j <= m; j++) {
+          a[i][j] = a[i][j].sub(f.mul(a[k][j]));
+        }
       }
     }
-    for (int j = 0; j < n - 1; j++) {
-      a[m][j] = c[j];
+    Rational[] z = new Rational[m];
+    for (int i = 0; i < m; i++) {
+      z[i] = a[i][m].div(a[i][i]);
+    }
+    return z;
+  }
+
+  /** An LP max c*x such that A*x &lt;= b, x &gt;= 0, to be solved by
+      solveAll() */
+  static class Problem {
+    final Rational[][] A;
+    final Rational[] b, c;
+    /** If not null, receives the optimal x */
+    Rational[] x;
+    /** If not null, receives the optimal dual values */
+    Rational[] y;
+    /** If not null, used for a warm start (see simplex()) */
+    int[] basis;
+    /** The optimum, in the same format as the return value of simplex() */
+    Rational value;
+
+    Problem(Rational[][] A, Rational[] b, Rational[] c) {
+      this.A = A;
+      this.b = b;
+      this.c = c;
+    }
+
+    /** Creates a problem with m constraints and n variables, whose
+        arrays (including x) are to be filled by the caller. This way,
+        one Problem object can be reused for solving many problems of
+        the same size. */
+    Problem(int m, int n) {
+      this(new Rational[m][n], new Rational[m], new Rational[n]);
+      x = new Rational[n];
+    }
+  }
+
+  /** Solves all the problems in the list, one after another, with the
+      specified engine and pivoting rule; each problem's optimum is put
+      into its value field. The tableaux are taken from a per-thread
+      pool (see pooledTableau()), so solving many problems of the same
+      size allocates no new tableaux.
+   */
+  static void solveAll(List<Problem> problems, SimplexResults.Engine engine, PivotRule.Kind rule, SimplexStats stats) {
+    for (Problem p : problems) {
+      p.value = simplexPooled(engine, p.A, p.b, p.c, p.x, p.y, p.basis, rule, stats);
+    }
+  }
+
+  /** Same as simplex(A, b, c, x, y, basis, rule, stats), with the
+      specified engine, but using the calling thread's pooled tableau
+      for problems of this size instead of a new one.
+   */
+  static Rational simplexPooled(SimplexResults.Engine engine, Rational[][] A, Rational[] b, Rational[] c,
+                                Rational[] x, Rational[] y, int[] basis, PivotRule.Kind rule, SimplexStats stats) {
+    Tableau t = pooledTableau(engine, A, b, c);
+    if (engine != SimplexResults.Engine.DOUBLE) {
+      return result(solve(t, basis, A, b, c, rule, stats), t, x, y);
+    }
+    // same fall-back as in simplexDouble(), with both attempts
+    // counted as one LP
+    SimplexStats attempts = (stats == null) ? null : new SimplexStats();
+    int status = solve(t, basis, A, b, c, rule, attempts);
+    if (status != UNBOUNDED) {
+      Rational[] value = new Rational[1];
+      if (verifyBasis(A, b, c, t.index, status, x, y, value)) {
+        if (stats != null) stats.recordAsOne(attempts);
+        return value[0];
+      }
+    }
+    t = pooledTableau(SimplexResults.Engine.RATIONAL, A, b, c);
+    status = solve(t, basis, A, b, c, rule, attempts);
+    if (stats != null) stats.recordAsOne(attempts);
+    return result(status, t, x, y);
+  }
+
+  /** For each thread, the tableaux already created, keyed by the
+      engine and the problem size */
+  private static final ThreadLocal<HashMap<Long, Tableau>> tableauPool =
+    ThreadLocal.withInitial(HashMap::new);
+
+  /** Returns a tableau for the specified engine, set up for the
+      problem max c*x such that A*x &lt;= b, x &gt;= 0. A tableau of the
+      right type and size created earlier by the same thread is
+      reused (see Tableau.load()); otherwise, a new one is created and
+      kept for later use.
+   */
+  static Tableau pooledTableau(SimplexResults.Engine engine, Rational[][] A, Rational[] b, Rational[] c) {
+    long key = ((long) engine.ordinal() << 48) | ((long) A.length << 24) | A[0].length;
+    HashMap<Long, Tableau> pool = tableauPool.get();
+    Tableau t = pool.get(key);
+    if (t == null) {
+      switch (engine) {
+      case FRACTION_FREE:
+        t = new IntegerTableau(A, b, c);
+        break;
+      case DOUBLE:
+        t = new DoubleTableau(A, b, c);
+        break;
+      case SPARSE:
+        t = new SparseRationalTableau(A, b, c);
+        break;
+      default:
+        t = new RationalTableau(A, b, c);
+      }
+      pool.put(key, t);
+    } else {
+      t.load(A, b, c);
+    }
+    return t;
+  }
+
+  /** Converts the outcome of solve() to the return convention of
+      simplex() */
+  static Rational result(int status, Tableau t, Rational[] x, Rational[] y) {
+    if (status == UNBOUNDED) {
+      return Rational.POSITIVE_INFINITY;
+    } else if (status == INFEASIBLE) {
+      return null;
+    }
+    final int m = t.m, n = t.n;
+    if (x != null) {
+      Arrays.fill(x, Rational.ZERO);
+      for (int i = 0; i < m; i++)
+        if (t.index[n + i] < n - 1)
+          x[t.index[n + i]] = t.value(i, n);
+    }
+    if (y != null) {
+      // the dual value of constraint i is minus the reduced cost of
+      // its slack variable (variable n+i), or 0 if the slack is basic
+      Arrays.fill(y, Rational.ZERO);
+      for (int j = 0; j < n; j++)
+        if (t.index[j] >= n)
+          y[t.index[j] - n] = t.dualValue(t.index[j] - n, j);
+    }
+    return t.value(m, n);
+  }
+
+  /** Solves the problem in tableau t, which has been set up from
+      A, b, c, starting from the specified basis if possible.
+      @param basis If not null, used for a warm start (unless basis[0]
+      is -1), and receives the final basis (see simplex())
+      @param rule The pivoting rule
+      @param stats If not null, receives the statistics of this solve
+   */
+  static int solve(Tableau t, int[] basis, Rational[][] A, Rational[] b, Rational[] c,
+                   PivotRule.Kind rule, SimplexStats stats) {
+    boolean warm = false;
+    if (basis != null && basis.length != t.index.length) {
+      throw new IllegalArgumentException("basis[] should have length " + t.index.length);
+    }
+    if (basis != null && basis[0] >= 0) {
+      warm = warmStart(t, basis);
+      if (!warm) t.load(A, b, c);
+    }
+    int status = solve(t, warm, rule, stats);
+    if (basis != null) {
+      System.arraycopy(t.index, 0, basis, 0, basis.length);
+    }
+    return status;
+  }
+
+  /** Pivots the variables that are basic in basis[] into the basis
+      of the freshly set up tableau t.
+      @return true if this could be done, and the resulting basic
+      solution is primal feasible, without the artificial variable
+      in the basis. In this case, phase 1 can be skipped. If false is
+      returned, the tableau needs to be set up again.
+   */
+  static boolean warmStart(Tableau t, int[] basis) {
+    final int m = t.m, n = t.n;
+    final int[] index = t.index;
+    boolean[] wanted = new boolean[n + m];
+    for (int i = 0; i < m; i++) {
+      wanted[basis[n + i]] = true;
+    }
+    if (wanted[n - 1]) return false;
+    for (int E = 0; E < n; E++) {
+      if (!wanted[index[E]]) continue;
+      int L = -1;
+      for (int i = 0; i < m && L < 0; i++) {
+        if (!wanted[index[n + i]] && t.signum(i, E) != 0) L = i;
+      }
+      if (L < 0) return false;
+      int tmp = index[E];
+      index[E] = index[L + n];
+      index[L + n] = tmp;
+      t.pivot(L, E);
+    }
+    for (int i = 0; i < m; i++) {
+      if (t.signum(i, n) < 0) return false;
+    }
+    return true;
+  }
+
+  static int solve(Tableau t) {
+    return solve(t, false, PivotRule.Kind.BLAND, null);
+  }
+
+  /** The pivoting loop of the original simplex() code, working on
+      a tableau that has already been set up. The entering column is
+      chosen by the specified pivoting rule; if it has made more than
+      n+m degenerate pivots in a row, it is replaced by Bland's rule,
+      which cannot cycle.
+      @param warm If true, the tableau already contains a primal
+      feasible basis (see warmStart()), and no phase-1 pivot is needed
+      @param stats If not null, receives the statistics of this solve
+      @return OPTIMAL, UNBOUNDED, or INFEASIBLE
+   */
+  static int solve(Tableau t, boolean warm, PivotRule.Kind kind, SimplexStats stats) {
+    final long t0 = (stats == null) ? 0 : System.nanoTime();
+    final int m = t.m, n = t.n;
+    final int[] index = t.index;
+    PivotRule rule = kind.create(t);
+    boolean fallback = false;
+    int pivots = 0, degenerate = 0, degenerateRun = 0;
+    int status = OPTIMAL;
+    int L = m;
+    for (int i = 0; i < m && !warm; i++) {
+      if (t.compare(L, i, n) > 0) {
+        L = i;
+      }
     }
-    a[m + 1][n - 1] = Rational.ONE.negate();
     for (int E = n - 1;;) {
       if (L < m) {
-        int t = index[E];
-        index[E] = index[L + n];
-        index[L + n] = t;
-        a[L][E] = a[L][E].inverse();
-        for (int j = 0; j <= n; j++) {
-          if (j != E) {
-            a[L][j] = a[L][j].mul(a[L][E].negate());
-          }
-        }
-        for (int i = 0; i <= m + 1; i++) {
-          if (i != L) {
-            for (int j = 0; j <= n; j++) {
-              if (j != E) {
-                a[i][j] = a[i][j].add(a[L][j].mul(a[i][E]));
-              }
-            }
-            a[i][E] = a[i][E].mul(a[L][E]);
-          }
+        if (t.signum(L, n) == 0) {
+          degenerate++;
+          degenerateRun++;
+        } else {
+          degenerateRun = 0;
         }
-      }
-      E = -1;
-      for (int j = 0; j < n; j++) {
-        if (E < 0 || index[E] > index[j]) {
-          if (a[m + 1][j].signum() > 0 || a[m + 1][j].signum() == 0 && a[m][j].signum() > 0) {
-            E = j;
-          }
+        rule.pivoting(t, L, E);
+        int tmp = index[E];
+        index[E] = index[L + n];
+        index[L + n] = tmp;
+        t.pivot(L, E);
+        pivots++;
+        if (degenerateRun > n + m && !fallback && kind != PivotRule.Kind.BLAND) {
+          rule = PivotRule.Kind.BLAND.create(t);
+          fallback = true;
         }
       }
+      E = rule.entering(t);
       if (E < 0) {
         break;
       }
       L = -1;
       for (int i = 0; i < m; i++) {
-        if (a[i][E].signum() < 0) {
-          Rational d;
-          if (L < 0 || (d = a[L][n].div(a[L][E]).sub(a[i][n].div(a[i][E]))).signum() < 0 || d.signum() == 0
+        if (t.signum(i, E) < 0) {
+          int d;
+          if (L < 0 || (d = t.compareRatios(L, i, E)) < 0 || d == 0
               && index[L + n] > index[i + n]) {
             L = i;
           }
         }
       }
       if (L < 0) {
-        return Rational.POSITIVE_INFINITY;
+        status = UNBOUNDED;
+        break;
       }
     }
-    if (a[m + 1][n].signum() < 0) {
+    if (status == OPTIMAL && t.signum(m + 1, n) < 0) {
 	//System.out.println("Negative a["+(m+1)+"]["+n+"]=" + a[m + 1][n]);
-	return null;
+	status = INFEASIBLE;
     }
-    if (x != null) {
-      Arrays.fill(x, Rational.ZERO);
-      for (int i = 0; i < m; i++)
-        if (index[n + i] < n - 1)
-          x[index[n + i]] = a[i][n];
+    if (stats != null) {
+      stats.record(pivots, degenerate, fallback, warm, System.nanoTime() - t0);
     }
-    return a[m][n];
+    return status;
   }
 
   // Usage example
@@ -101,9 +501,11 @@ public class Simplex {
     long[] b = { 8, 10, 2 };
     long[] c = { 1, 1 };
     Rational[] x = new Rational[c.length];
-    Rational res = simplex(cnv(a), cnv(b), cnv(c), x);
+    Rational[] y = new Rational[b.length];
+    Rational res = simplex(cnv(a), cnv(b), cnv(c), x, y);
     System.out.println(new Rational(8).equals(res));
     System.out.println(Arrays.toString(x));
+    System.out.println(Arrays.toString(y));
 
     a = new long[][] { { 3, 4, -3 }, { 5, -4, -3 }, { 7, 4, 11 } };
     b = new long[] { 23, 10, 30 };
@@ -140,6 +542,93 @@ public class Simplex {
     x = new Rational[c.length];
     res = simplex(cnv(a), cnv(b), cnv(c), x);
     System.out.println(Arrays.toString(x));
+
+    // the other versions should agree with the original one
+    Random rand = new Random(1);
+    int mismatches = 0;
+    for (int k = 0; k < 1000; k++) {
+      int m1 = 1 + rand.nextInt(6), n1 = 1 + rand.nextInt(6);
+      Rational[][] A = new Rational[m1][n1];
+      Rational[] B = new Rational[m1], C = new Rational[n1];
+      for (int i = 0; i < m1; i++) {
+        for (int j = 0; j < n1; j++) A[i][j] = new Rational(rand.nextInt(21) - 10, 1 + rand.nextInt(12));
+        B[i] = new Rational(rand.nextInt(21) - 5, 1 + rand.nextInt(12));
+      }
+      for (int j = 0; j < n1; j++) C[j] = new Rational(rand.nextInt(21) - 10, 1 + rand.nextInt(12));
+      Rational[] x1 = new Rational[n1], x2 = new Rational[n1];
+      Rational[] x3 = new Rational[n1];
+      Rational[] y1 = new Rational[m1], y2 = new Rational[m1], y3 = new Rational[m1];
+      Rational r1 = simplex(A, B, C, x1, y1), r2 = simplexFractionFree(A, B, C, x2, y2, null);
+      boolean same = (r1 == null) ? r2 == null :
+        r1 == Rational.POSITIVE_INFINITY ? r2 == Rational.POSITIVE_INFINITY :
+        r1.equals(r2) && Arrays.equals(x1, x2) && Arrays.equals(y1, y2);
+      if (!same) mismatches++;
+      r2 = simplexSparse(A, B, C, x2, y2, null, PivotRule.Kind.BLAND, null);
+      same = (r1 == null) ? r2 == null :
+        r1 == Rational.POSITIVE_INFINITY ? r2 == Rational.POSITIVE_INFINITY :
+        r1.equals(r2) && Arrays.equals(x1, x2) && Arrays.equals(y1, y2);
+      if (!same) mismatches++;
+      // the double version must give the same optimum (but possibly another optimal x)
+      Rational r3 = simplexDouble(A, B, C, x3, y3, null);
+      same = (r1 == null) ? r3 == null :
+        r1 == Rational.POSITIVE_INFINITY ? r3 == Rational.POSITIVE_INFINITY :
+        r1.equals(r3);
+      if (!same) mismatches++;
+      // the dual values must be feasible, and give the same optimum
+      if (r1 != null && r1 != Rational.POSITIVE_INFINITY) {
+        for (Rational[] yy : new Rational[][] { y1, y3 }) {
+          Rational dual = Rational.ZERO;
+          for (int i = 0; i < m1; i++) {
+            if (yy[i].signum() < 0) mismatches++;
+            dual = dual.add(B[i].mul(yy[i]));
+          }
+          for (int j = 0; j < n1; j++) {
+            Rational s = Rational.ZERO;
+            for (int i = 0; i < m1; i++) s = s.add(A[i][j].mul(yy[i]));
+            if (s.compareTo(C[j]) < 0) mismatches++;
+          }
+          if (!dual.equals(r1)) mismatches++;
+        }
+      }
+      // a warm start from the final basis, with a perturbed objective,
+      // must give the same optimum as a cold start
+      int[] basis = new int[m1 + n1 + 1];
+      basis[0] = -1;
+      simplex(A, B, C, null, null, basis);
+      C[rand.nextInt(n1)] = new Rational(rand.nextInt(21) - 10, 1 + rand.nextInt(12));
+      r1 = simplex(A, B, C, x1);
+      for (int engine = 0; engine < 3; engine++) {
+        int[] basis1 = basis.clone();
+        Rational r4 = (engine == 0) ? simplex(A, B, C, x3, null, basis1) :
+          (engine == 1) ? simplexFractionFree(A, B, C, x3, null, basis1) :
+          simplexDouble(A, B, C, x3, null, basis1);
+        same = (r1 == null) ? r4 == null :
+          r1 == Rational.POSITIVE_INFINITY ? r4 == Rational.POSITIVE_INFINITY :
+          r1.equals(r4);
+        if (!same) mismatches++;
+      }
+      // so must the other pivoting rules
+      for (PivotRule.Kind rule : PivotRule.Kind.values()) {
+        Rational r5 = simplex(A, B, C, x3, null, null, rule, null);
+        Rational r6 = simplexFractionFree(A, B, C, x3, null, null, rule, null);
+        same = (r1 == null) ? r5 == null && r6 == null :
+          r1 == Rational.POSITIVE_INFINITY ? r5 == Rational.POSITIVE_INFINITY && r6 == Rational.POSITIVE_INFINITY :
+          r1.equals(r5) && r1.equals(r6);
+        if (!same) mismatches++;
+      }
+      // and so must the pooled tableaux, reused across problems
+      for (SimplexResults.Engine engine : SimplexResults.Engine.values()) {
+        List<Problem> problems = Arrays.asList(new Problem(A, B, C), new Problem(A, B, C));
+        solveAll(problems, engine, PivotRule.Kind.BLAND, null);
+        for (Problem pr : problems) {
+          same = (r1 == null) ? pr.value == null :
+            r1 == Rational.POSITIVE_INFINITY ? pr.value == Rational.POSITIVE_INFINITY :
+            r1.equals(pr.value);
+          if (!same) mismatches++;
+        }
+      }
+    }
+    System.out.println(0 == mismatches);
   }
 
   static Rational[] cnv(long[] a) {
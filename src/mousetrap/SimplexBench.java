@@ -0,0 +1,84 @@
+package mousetrap;
+
+import java.util.*;
+import java.io.*;
+
+import util.ParseConfig;
+
+/** Compares the running time of different LP solving settings
+    (see SimplexResults.Options) on a few standard models. For each
+    model, the complete value iteration is run with each setting
+    (engine, LP formulation, pivoting rule), and the report text is
+    compared with the one produced with the first setting. The number
+    of pivots of the timed runs is reported as well.
+
+    <p>Usage:
+    java -classpath classes [-Dreps=3] mousetrap.SimplexBench
+ */
+public class SimplexBench {
+
+    /** Runs the optimization, and returns the report text */
+    static String run(Mousetrap mo, SimplexResults.Options options) {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	PrintStream out = new PrintStream(bytes);
+	mo.lpOptions = options;
+	mo.sink = new TextResultsSink(out, null);
+	if (mo instanceof Mousetrap2) {
+	    ((Mousetrap2)mo).optimize(1e-5);
+	} else {
+	    mo.optimize();
+	}
+	out.close();
+	return bytes.toString();
+    }
+
+    /** LP formulations to compare */
+    static final String[] formulations = {"subsets", "single", "dual"};
+
+    static SimplexResults.Options options(SimplexResults.Engine engine, String formulation, PivotRule.Kind pivot) {
+	SimplexResults.Options options = new SimplexResults.Options();
+	options.engine = engine;
+	options.pivot = pivot;
+	options.singleLP = formulation.equals("single");
+	options.dual = formulation.equals("dual");
+	return options;
+    }
+
+    static public void main(String argv[]) {
+	ParseConfig ht = new ParseConfig();
+	final int reps = ht.getOption("reps", 1);
+	System.setProperty("line.separator", "\n");
+
+	Mousetrap mos[] = {
+	    Mousetrap.mo3(),
+	    Mousetrap.moChain(10, false, 1),
+	    Mousetrap.moChain(10, true, 2),
+	    Mousetrap2.mo3(),
+	    Mousetrap2.moChain(10, false, 1, 2),
+	    Mousetrap2.moChain(10, true, 2, 1)};
+
+	SimplexResults.Engine engines[] = SimplexResults.Engine.values();
+
+	System.out.println("Model\tEngine\tLP\tPivoting\tmsec\tPivots\tSame output");
+	for(Mousetrap mo: mos) {
+	    String name = (mo instanceof Mousetrap2 ? "Mousetrap2: " : "Mousetrap: ") + mo.modelName;
+	    String ref = null;
+	    for(String formulation: formulations) {
+		for(SimplexResults.Engine engine: engines) {
+		    for(PivotRule.Kind pivot: PivotRule.Kind.values()) {
+			SimplexResults.Options options = options(engine, formulation, pivot);
+			run(mo, options); // warm-up
+			options.stats = new SimplexStats();
+			long t0 = System.currentTimeMillis();
+			String s = null;
+			for(int k=0; k<reps; k++) s = run(mo, options);
+			long msec = (System.currentTimeMillis() - t0)/reps;
+			long pivots = options.stats.pivots.get()/reps;
+			if (ref==null) ref = s;
+			System.out.println(name + "\t" + engine + "\t" + formulation + "\t" + pivot + "\t" + msec + "\t" + pivots + "\t" + s.equals(ref));
+		    }
+		}
+	    }
+	}
+    }
+}
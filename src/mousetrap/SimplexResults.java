@@ -4,14 +4,111 @@ import java.util.*;
 //import java.text.*;
 //import java.io.*;
 
+import util.ParseConfig;
+
 /** Our interface to the Simplex algorithm code. */
 class SimplexResults {
+    /** Which implementation of the simplex method is used to solve the LPs */
+    enum Engine {
+	/** Simplex.simplex(), with Rational arithmetic */
+	RATIONAL,
+	/** Simplex.simplexFractionFree(), with integer (Bareiss-style) pivoting */
+	FRACTION_FREE,
+	/** Simplex.simplexDouble(): pivoting in double arithmetic, with
+	    an exact check of the final basis */
+	DOUBLE,
+	/** Simplex.simplexSparse(): Rational arithmetic on a tableau
+	    stored as sparse rows */
+	SPARSE
+    };
+
+    /** Settings that control how the LPs are solved */
+    static class Options {
+	Engine engine = Engine.DOUBLE;
+	/** If true, the game is solved with a single LP (see
+	    solveSingleLP()) rather than with H LPs, one per subset
+	    (see solveSubsets()) */
+	boolean singleLP = false;
+	/** If true, both players' strategies are obtained from a single
+	    solve: the constrained player's from the primal solution of
+	    the single LP, and the mobile player's from its dual values
+	    (see solveSingleLP()). This implies singleLP. */
+	boolean dual = false;
+	/** If true, the optimizers keep the final bases of the LPs of each
+	    local game (see Bases), and start the next round's solution
+	    of the same local game from them. */
+	boolean warmStart = false;
+	/** The rule for choosing the entering variable (see PivotRule) */
+	PivotRule.Kind pivot = PivotRule.Kind.BLAND;
+	/** If not null, pivot counts and timing of all LPs are
+	    accumulated here */
+	SimplexStats stats = null;
+	/** If true, the payoffs are converted to Rationals exactly (see
+	    Rational.valueOf(double)), rather than approximated by
+	    fractions with small denominators (see
+	    Mousetrap.approxRational()) */
+	boolean exact = false;
+	/** If true, each LP constraint, and the objective, are multiplied
+	    by the power of two that makes all their (dyadic) coefficients
+	    integers (see scaleRows()). This is only useful together with
+	    exact. */
+	boolean scaleRows = false;
+	/** If true, dominated and duplicate rows and columns are removed
+	    from the payoff matrix before the LPs are set up (see
+	    presolve()) */
+	boolean presolve = false;
+
+	Options() {}
+
+	/** Reads the settings from the config file and/or Java system
+	    properties, e.g. -Dengine=FRACTION_FREE -DsingleLP=true */
+	Options(ParseConfig ht) {
+	    engine = ht.getOptionEnum(Engine.class, "engine", engine);
+	    singleLP = ht.getOption("singleLP", singleLP);
+	    dual = ht.getOption("dual", dual);
+	    warmStart = ht.getOption("warmStart", warmStart);
+	    pivot = ht.getOptionEnum(PivotRule.Kind.class, "pivot", pivot);
+	    if (ht.getOption("simplexStats", false)) stats = new SimplexStats();
+	    exact = ht.getOption("exact", exact);
+	    scaleRows = ht.getOption("scaleRows", scaleRows);
+	    presolve = ht.getOption("presolve", presolve);
+	}
+    }
+
+    /** The final bases (Tableau.index[] arrays) of the LPs solved for
+	one matrix game. If the same game, with slightly different
+	payoffs, is solved again, the LPs can be warm-started from
+	these bases (see Simplex.simplex(A, b, c, x, y, basis)).
+     */
+    static class Bases {
+	private int[][] index;
+
+	/** Returns the basis array for the k-th of the nLP LPs of a game,
+	    which should have the length len. A new array (marked
+	    with -1 as "no basis yet") is created if there is none
+	    of the right size. */
+	int[] get(int k, int nLP, int len) {
+	    if (index == null || index.length != nLP) index = new int[nLP][];
+	    if (index[k] == null || index[k].length != len) {
+		index[k] = new int[len];
+		index[k][0] = -1;
+	    }
+	    return index[k];
+	}
+    }
+
     /** Will contain the result of the optimization, vector p.
      */
     double [] p;
     /** Will contain f(p) for the p found by optimization.
     */
     double maxval=0;
+    /** If the single-LP formulation was used, will contain the
+	H-dimensional vector q that minimizes max<sub>p</sub> p<sup>T</sup> A q
+	(i.e. the other player's optimal strategy), obtained from the dual
+	values of the LP; otherwise, null.
+     */
+    double [] q;
 
     /** For an L-by-H matrix A, finds the L-dimensional vector p such
 	that f(p)=max<sub>p' in P</sub>f(p),
@@ -34,18 +131,217 @@ class SimplexResults {
 	@param payoffMatrix Matrix A.
      */
     SimplexResults(double[][] payoffMatrix) {
+	this(payoffMatrix, new Options());
+    }
+
+    /**	@param payoffMatrix Matrix A.
+	@param options Controls which formulation and which simplex
+	implementation are used
+     */
+    SimplexResults(double[][] payoffMatrix, Options options) {
+	this(payoffMatrix, options, null);
+    }
+
+    /**	@param payoffMatrix Matrix A.
+	@param options Controls which formulation and which simplex
+	implementation are used
+	@param bases If not null, the LPs are warm-started from the
+	bases stored in it (if any), and their final bases are stored
+	in it
+     */
+    SimplexResults(double[][] payoffMatrix, Options options, Bases bases) {
+	final int L=payoffMatrix.length;
+	final int H=payoffMatrix[0].length;
+	int[] rows = null, cols = null;
+	if (options.presolve) {
+	    boolean[] keepRow = new boolean[L], keepCol = new boolean[H];
+	    presolve(payoffMatrix, keepRow, keepCol);
+	    rows = indexes(keepRow);
+	    cols = indexes(keepCol);
+	    if (rows.length == L && cols.length == H) {
+		rows = cols = null;
+	    } else {
+		double[][] a = new double[rows.length][];
+		for(int i=0; i<rows.length; i++) {
+		    a[i] = new double[cols.length];
+		    for(int j=0; j<cols.length; j++) a[i][j] = payoffMatrix[rows[i]][cols[j]];
+		}
+		payoffMatrix = a;
+	    }
+	}
+
+	if (payoffMatrix.length == 1 && payoffMatrix[0].length == 1) {
+	    // nothing left to optimize
+	    p = new double[] {1};
+	    q = (options.singleLP || options.dual) ? new double[] {1} : null;
+	    maxval = payoffMatrix[0][0];
+	} else if (options.singleLP || options.dual) {
+	    solveSingleLP(payoffMatrix, options, bases);
+	} else {
+	    solveSubsets(payoffMatrix, options, bases);
+	}
+
+	if (rows != null) {
+	    p = Mousetrap.spreadArray(p, L, rows);
+	    if (q != null) q = Mousetrap.spreadArray(q, H, cols);
+	}
+    }
+
+    /** Removes dominated rows and columns of the payoff matrix, until
+	there are none left: a row is removed if another remaining row
+	is at least as good for the row player (the maximizer) against
+	every remaining column, and a column is removed if another
+	remaining column is at least as good for the column player (the
+	minimizer) against every remaining row. Of several identical rows
+	or columns, the first one is kept.
+
+	<p>Removing a weakly dominated column does not change
+	min<sub>j</sub>(p<sup>T</sup>A)<sub>j</sub> for any p supported on
+	the remaining rows, and removing a weakly dominated row does not
+	change max<sub>i</sub>(Aq)<sub>i</sub> for any q supported on the
+	remaining columns; therefore, an equilibrium of the reduced game,
+	padded with zeros, is an equilibrium of the full game, with the
+	same value. (Weak dominance may remove some of the optimal
+	strategies, but one optimal strategy is all we need.)
+	@param keepRow Output: which rows remain
+	@param keepCol Output: which columns remain
+     */
+    static void presolve(double[][] a, boolean[] keepRow, boolean[] keepCol) {
+	final int L = a.length, H = a[0].length;
+	Arrays.fill(keepRow, true);
+	Arrays.fill(keepCol, true);
+	boolean changed = true;
+	while(changed) {
+	    changed = false;
+	    for(int i=0; i<L; i++) {
+		if (!keepRow[i]) continue;
+		for(int k=0; k<L; k++) {
+		    if (k==i || !keepRow[k]) continue;
+		    // does row k dominate row i? (ties: the earlier row wins)
+		    boolean dom = true, equal = true;
+		    for(int j=0; j<H && dom; j++) {
+			if (!keepCol[j]) continue;
+			if (a[k][j] < a[i][j]) dom = false;
+			else if (a[k][j] > a[i][j]) equal = false;
+		    }
+		    if (dom && (!equal || k < i)) {
+			keepRow[i] = false;
+			changed = true;
+			break;
+		    }
+		}
+	    }
+	    for(int j=0; j<H; j++) {
+		if (!keepCol[j]) continue;
+		for(int k=0; k<H; k++) {
+		    if (k==j || !keepCol[k]) continue;
+		    // does column k dominate column j?
+		    boolean dom = true, equal = true;
+		    for(int i=0; i<L && dom; i++) {
+			if (!keepRow[i]) continue;
+			if (a[i][k] > a[i][j]) dom = false;
+			else if (a[i][k] < a[i][j]) equal = false;
+		    }
+		    if (dom && (!equal || k < j)) {
+			keepCol[j] = false;
+			changed = true;
+			break;
+		    }
+		}
+	    }
+	}
+    }
+
+    /** The positions of the true elements of keep[] */
+    private static int[] indexes(boolean[] keep) {
+	int n = 0;
+	for(boolean x: keep) if (x) n++;
+	int[] z = new int[n];
+	n = 0;
+	for(int i=0; i<keep.length; i++) {
+	    if (keep[i]) z[n++] = i;
+	}
+	return z;
+    }
+
+    /** Converts an LP coefficient to a Rational, exactly or
+	approximately, as specified by options.exact */
+    private static Rational toRational(Options options, double x) {
+	return options.exact ? Rational.valueOf(x) : Mousetrap.approxRational(x);
+    }
+
+    /** Multiplies each constraint A[i]*x &lt;= b[i] by the power of two
+	that makes all its coefficients integers (see scale()).
+	@return The factor by which each constraint was multiplied
+     */
+    static Rational[] scaleRows(Rational[][] A, Rational[] b) {
+	Rational[] factors = new Rational[A.length];
+	for(int i=0; i<A.length; i++) {
+	    factors[i] = scale(A[i], b[i]);
+	    b[i] = b[i].mul(factors[i]);
+	}
+	return factors;
+    }
+
+    /** Multiplies all elements of v by the smallest power of two that
+	makes them all, and also rhs (unless it's null), integers. If any
+	of them is not dyadic (a denominator that is not a power of
+	two), nothing is done.
+	@return The factor (a power of two, or 1)
+     */
+    static Rational scale(Rational[] v, Rational rhs) {
+	int k = (rhs==null) ? 0 : rhs.dyadicExponent();
+	for(Rational a: v) {
+	    if (k < 0) break;
+	    int ka = a.dyadicExponent();
+	    k = (ka < 0) ? -1 : Math.max(k, ka);
+	}
+	if (k <= 0) return Rational.ONE;
+	Rational f = Rational.powerOfTwo(k);
+	for(int j=0; j<v.length; j++) {
+	    v[j] = v[j].mul(f);
+	}
+	return f;
+    }
+
+    /** For each thread, the Problem objects already used by
+	solveSubsets(), keyed by the problem size (as in
+	Simplex.pooledTableau()), so that their arrays can be reused */
+    private static final ThreadLocal<HashMap<Long, List<Simplex.Problem>>> subsetProblems =
+	ThreadLocal.withInitial(HashMap::new);
+
+    /** Returns a list of H problems with H constraints and L1 variables
+	each. A list of this size created earlier by the same thread is
+	reused; otherwise, a new one is created and kept for later use.
+     */
+    private static List<Simplex.Problem> subsetProblems(int H, int L1) {
+	long key = ((long) H << 32) | L1;
+	HashMap<Long, List<Simplex.Problem>> pool = subsetProblems.get();
+	List<Simplex.Problem> problems = pool.get(key);
+	if (problems == null) {
+	    problems = new ArrayList<>(H);
+	    for(int i=0; i<H; i++) problems.add(new Simplex.Problem(H, L1));
+	    pool.put(key, problems);
+	}
+	return problems;
+    }
+
+    /** Finds p by solving H LPs, one for each subset P<sub>j</sub>,
+	as described in the comments to the constructor.
+     */
+    private void solveSubsets(double[][] payoffMatrix, Options options, Bases bases) {
 	final int L=payoffMatrix.length;
 	final int H=payoffMatrix[0].length;
 	final int L1 = L-1;
-	int ibest = 0;
-	Rational[] xbest = null;
+	List<Simplex.Problem> problems = subsetProblems(H, L1);
+	Rational[] objScale = new Rational[H];
 	// maximization within each of H subsets
 	for(int i=0; i<H; i++) { 
-	    Rational[][] A = new Rational[H][];
-	    Rational[] b = new Rational[H], c= new Rational[L1], x = new Rational[L1];
+	    Simplex.Problem pr = problems.get(i);
+	    Rational[][] A = pr.A;
+	    Rational[] b = pr.b, c= pr.c;
 	    
 	    for(int j=0; j<H; j++) {
-		A[j] = new Rational[L1];
 		if (j==i) {
 		    // the last inequality
 		    for(int k=0; k<L1; k++) {
@@ -55,16 +351,27 @@ class SimplexResults {
 		} else {
 		    double s = payoffMatrix[L1][i] - payoffMatrix[L1][j];
 		    for(int k=0; k<L1; k++) {
-			A[j][k] = Mousetrap.approxRational( payoffMatrix[k][i] - payoffMatrix[k][j] - s);
+			A[j][k] = toRational(options, payoffMatrix[k][i] - payoffMatrix[k][j] - s);
 		    }
-		    b[j] =Mousetrap.approxRational( -s );
+		    b[j] =toRational(options, -s );
 		}
 	    }
 	    for(int k=0; k<L1; k++) {
-		c[k] = Mousetrap.approxRational( payoffMatrix[k][i] - payoffMatrix[L1][i]);
+		c[k] = toRational(options, payoffMatrix[k][i] - payoffMatrix[L1][i]);
 	    }
-	    // omega = max_{x : such that A*x <= b, x >= 0 }( c*x)
-	    Rational omega = Simplex.simplex(A, b, c, x);
+	    objScale[i] = Rational.ONE;
+	    if (options.scaleRows) {
+		scaleRows(A, b);
+		objScale[i] = scale(c, null);
+	    }
+	    pr.basis = (bases==null) ? null : bases.get(i, H, H + L1 + 1);
+	}
+	// omega = max_{x : such that A*x <= b, x >= 0 }( c*x)
+	Simplex.solveAll(problems, options.engine, options.pivot, options.stats);
+	Rational[] xbest = null;
+	for(int i=0; i<H; i++) { 
+	    Rational omega = problems.get(i).value;
+	    if (omega!=null && omega!=Rational.POSITIVE_INFINITY) omega = omega.div(objScale[i]);
 	    if (omega==null) {
 		// The feasible space is empty
 		continue;		
@@ -73,8 +380,7 @@ class SimplexResults {
 	    double val = omega.doubleValue() + payoffMatrix[L1][i];
 	    if (xbest==null || val>maxval) {
 		maxval = val;
-		ibest = i;
-		xbest = x;
+		xbest = problems.get(i).x;
 	    }
 	}
 	if (xbest==null) throw new IllegalArgumentException("All simplexes were empty!?");
@@ -86,6 +392,107 @@ class SimplexResults {
 	p[L1] = 1 - s;
    }
 
+    /** Finds p by solving the standard single LP for the matrix game,
+	<center>
+	max v such that A<sup>T</sup>p &ge; v e, e<sup>T</sup>p = 1, p &ge; 0,
+	</center>
+	in which the number of variables is L+1, and the number of
+	constraints, H.
+
+	<p>So that the LP data would be as well approximated by
+	rationals as those in solveSubsets(), the payoff of each row k is
+	split into its first element and the differences from it,
+	a<sub>kj</sub> = r<sub>k</sub> + e<sub>kj</sub>; then v = r<sup>T</sup>p - w,
+	with w = -min<sub>j</sub> &Sigma;<sub>k</sub> e<sub>kj</sub> p<sub>k</sub> &ge; 0
+	(since e<sub>k0</sub>=0). The objective, r<sup>T</sup>p - w, is
+	computed with r shifted so that it is always &ge; 1; then the
+	condition e<sup>T</sup>p = 1 can be relaxed to e<sup>T</sup>p &le; 1,
+	since any optimal p will have e<sup>T</sup>p = 1 anyway.
+
+	<p>By LP duality, the dual values y<sub>j</sub> of the constraints
+	for j=1..H-1 (together with q<sub>0</sub> = 1 - &Sigma; y<sub>j</sub>,
+	which comes from the dual constraint for w) make up the optimal
+	strategy q of the other player: the dual LP is
+	min<sub>q</sub> max<sub>k</sub> (Aq)<sub>k</sub>.
+     */
+    private void solveSingleLP(double[][] payoffMatrix, Options options, Bases bases) {
+	final int L=payoffMatrix.length;
+	final int H=payoffMatrix[0].length;
+	final int L1 = L-1;
+	double min = payoffMatrix[0][0];
+	for(double[] row: payoffMatrix) {
+	    for(double a: row) min = Math.min(min, a);
+	}
+
+	Rational[][] A = new Rational[H][];
+	Rational[] b = new Rational[H], c= new Rational[L+1], x = new Rational[L+1], y = new Rational[H];
+	// - sum_k e_kj p_k - w <= 0, for j=1..H-1
+	for(int j=1; j<H; j++) {
+	    A[j-1] = new Rational[L+1];
+	    for(int k=0; k<L; k++) {
+		A[j-1][k] = toRational(options, payoffMatrix[k][0] - payoffMatrix[k][j]);
+	    }
+	    A[j-1][L] = Rational.ONE.negate();
+	    b[j-1] = Rational.ZERO;
+	}
+	// sum_k p_k <= 1
+	A[H-1] = new Rational[L+1];
+	for(int k=0; k<L; k++) {
+	    A[H-1][k] = Rational.ONE;
+	}
+	A[H-1][L] = Rational.ZERO;
+	b[H-1] = Rational.ONE;
+	// max sum_k (r_k - min + 1) p_k - w
+	for(int k=0; k<L; k++) {
+	    c[k] = toRational(options, payoffMatrix[k][0] - min).add(Rational.ONE);
+	}
+	c[L] = Rational.ONE.negate();
+
+	Rational[] rowScale = null;
+	Rational objScale = Rational.ONE;
+	if (options.scaleRows) {
+	    rowScale = scaleRows(A, b);
+	    objScale = scale(c, null);
+	}
+
+	int[] basis = (bases==null) ? null : bases.get(0, 1, H + L + 2);
+	Rational v = simplex(options, A, b, c, x, y, basis);
+	if (v==null || v==Rational.POSITIVE_INFINITY) throw new IllegalArgumentException("The game LP has no solution!?");
+	if (options.scaleRows) {
+	    // undo the scaling of the objective, and of the constraints
+	    // (the dual value of a constraint multiplied by s is divided by s)
+	    v = v.div(objScale);
+	    for(int j=0; j<H; j++) {
+		y[j] = y[j].mul(rowScale[j]).div(objScale);
+	    }
+	}
+	maxval = v.doubleValue() - 1 + min;
+	p = new double[L];
+	double s = 0;
+	for(int k=0; k<L1; k++) {
+	    s += p[k] = x[k].doubleValue();
+	}
+	p[L1] = 1 - s;
+	q = new double[H];
+	s = 0;
+	for(int j=1; j<H; j++) {
+	    s += q[j] = y[j-1].doubleValue();
+	}
+	q[0] = 1 - s;
+    }
+
+    /** Solves max c*x such that A*x &lt;= b, x &gt;= 0 with the engine
+	and the pivoting rule specified in the options, reusing this
+	thread's tableau for LPs of this size. The return value is the
+	same as that of Simplex.simplex()
+	@param y If not null, the dual values will be placed here
+	@param basis If not null, used for a warm start, and receives
+	the final basis
+     */
+    static Rational simplex(Options options, Rational[][] A, Rational[] b, Rational[] c, Rational[] x, Rational[] y, int[] basis) {
+	return Simplex.simplexPooled(options.engine, A, b, c, x, y, basis, options.pivot, options.stats);
+    }
+
 }
 
 
@@ -0,0 +1,63 @@
+package mousetrap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Pivot counts and timing, accumulated over a number of calls to
+    Simplex.solve(). The counters are atomic, so that one SimplexStats
+    object can be shared by several threads solving LPs at the same
+    time.
+ */
+class SimplexStats {
+    /** Number of LPs solved */
+    final AtomicLong solves = new AtomicLong();
+    /** Total number of pivots */
+    final AtomicLong pivots = new AtomicLong();
+    /** Pivots that did not change the basic solution (the leaving
+	variable was already 0) */
+    final AtomicLong degeneratePivots = new AtomicLong();
+    /** The largest number of pivots in a single solve */
+    final AtomicLong maxPivots = new AtomicLong();
+    /** Number of solves in which the pivoting rule was replaced by
+	Bland's rule to avoid cycling */
+    final AtomicLong blandFallbacks = new AtomicLong();
+    /** Number of solves that started from a warm-start basis */
+    final AtomicLong warmStarts = new AtomicLong();
+    /** Total time spent in the solves, in nanoseconds */
+    final AtomicLong nanos = new AtomicLong();
+
+    /** Records the outcome of one solve */
+    void record(int nPivots, int nDegenerate, boolean fallback, boolean warm, long nsec) {
+	solves.incrementAndGet();
+	pivots.addAndGet(nPivots);
+	degeneratePivots.addAndGet(nDegenerate);
+	maxPivots.accumulateAndGet(nPivots, Math::max);
+	if (fallback) blandFallbacks.incrementAndGet();
+	if (warm) warmStarts.incrementAndGet();
+	nanos.addAndGet(nsec);
+    }
+
+    /** Records all the solves accumulated in s as a single one: these
+	are the attempts at one LP, e.g. a solve in double arithmetic
+	and its exact re-solve (see Simplex.simplexDouble()) */
+    void recordAsOne(SimplexStats s) {
+	solves.incrementAndGet();
+	pivots.addAndGet(s.pivots.get());
+	degeneratePivots.addAndGet(s.degeneratePivots.get());
+	maxPivots.accumulateAndGet(s.pivots.get(), Math::max);
+	if (s.blandFallbacks.get() > 0) blandFallbacks.incrementAndGet();
+	if (s.warmStarts.get() > 0) warmStarts.incrementAndGet();
+	nanos.addAndGet(s.nanos.get());
+    }
+
+    public String toString() {
+	long n = solves.get();
+	return "LPs solved=" + n +
+	    ", pivots=" + pivots.get() +
+	    " (avg " + (n == 0 ? 0 : (double)pivots.get() / n) +
+	    ", max " + maxPivots.get() + ")" +
+	    ", degenerate pivots=" + degeneratePivots.get() +
+	    ", Bland fallbacks=" + blandFallbacks.get() +
+	    ", warm starts=" + warmStarts.get() +
+	    ", time=" + (nanos.get() / 1000000) + " msec";
+    }
+}
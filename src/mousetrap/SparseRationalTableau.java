@@ -0,0 +1,171 @@
+package mousetrap;
+
+/** A sparse version of RationalTableau. Each row is stored as a list
+    of its non-zero entries: the column numbers, in increasing order,
+    in col[i][], and the values in val[i][]; all other entries are
+    zeros. A pivot only touches the rows that have a non-zero entry in
+    the pivot column, and, in those, only the columns in which the
+    pivot row has a non-zero entry. The arithmetic is exact, so the
+    pivots carried out, and the results, are the same as with
+    RationalTableau.
+ */
+class SparseRationalTableau extends Tableau {
+    /** col[i][k] (k &lt; len[i]) is the column of the k-th non-zero
+	entry of row i */
+    final int[][] col;
+    /** val[i][k] is the value of that entry */
+    final Rational[][] val;
+    /** The number of non-zero entries in each row */
+    final int[] len;
+    /** Work space for merging rows */
+    private int[] mergeCol;
+    private Rational[] mergeVal;
+
+    /** Sets up the tableau for the problem max c*x such that A*x &lt;= b, x &gt;= 0 */
+    SparseRationalTableau(Rational[][] A, Rational[] b, Rational[] c) {
+	super(A.length, A[0].length + 1);
+	col = new int[m + 2][];
+	val = new Rational[m + 2][];
+	len = new int[m + 2];
+	mergeCol = new int[n + 1];
+	mergeVal = new Rational[n + 1];
+	load(A, b, c);
+    }
+
+    void load(Rational[][] A, Rational[] b, Rational[] c) {
+	resetIndex();
+	for (int i = 0; i < m + 2; i++) {
+	    len[i] = 0;
+	}
+	for (int i = 0; i < m; i++) {
+	    for (int j = 0; j < n - 1; j++) {
+		append(i, j, A[i][j].negate());
+	    }
+	    append(i, n - 1, Rational.ONE);
+	    append(i, n, b[i]);
+	}
+	for (int j = 0; j < n - 1; j++) {
+	    append(m, j, c[j]);
+	}
+	append(m + 1, n - 1, Rational.ONE.negate());
+    }
+
+    /** Adds an entry at the end of row i, unless it is zero. The
+	columns must be appended in increasing order. */
+    private void append(int i, int j, Rational x) {
+	if (x.signum() == 0) return;
+	if (col[i] == null || len[i] == col[i].length) {
+	    int cap = (col[i] == null) ? 4 : Math.min(2 * col[i].length, n + 1);
+	    int[] c1 = new int[cap];
+	    Rational[] v1 = new Rational[cap];
+	    if (col[i] != null) {
+		System.arraycopy(col[i], 0, c1, 0, len[i]);
+		System.arraycopy(val[i], 0, v1, 0, len[i]);
+	    }
+	    col[i] = c1;
+	    val[i] = v1;
+	}
+	col[i][len[i]] = j;
+	val[i][len[i]] = x;
+	len[i]++;
+    }
+
+    /** The position of column j in row i, or -1 if a[i][j] is zero */
+    private int find(int i, int j) {
+	int lo = 0, hi = len[i] - 1;
+	final int[] c = col[i];
+	while (lo <= hi) {
+	    int mid = (lo + hi) >>> 1;
+	    if (c[mid] < j) lo = mid + 1;
+	    else if (c[mid] > j) hi = mid - 1;
+	    else return mid;
+	}
+	return -1;
+    }
+
+    /** The value of a[i][j] */
+    private Rational get(int i, int j) {
+	int k = find(i, j);
+	return (k < 0) ? Rational.ZERO : val[i][k];
+    }
+
+    int signum(int i, int j) {
+	return get(i, j).signum();
+    }
+
+    int compare(int i, int k, int j) {
+	return get(i, j).compareTo(get(k, j));
+    }
+
+    int compareInRow(int i, int j, int k) {
+	return get(i, j).compareTo(get(i, k));
+    }
+
+    int compareRatios(int i, int k, int E) {
+	return get(i, n).div(get(i, E)).sub(get(k, n).div(get(k, E))).signum();
+    }
+
+    void pivot(int L, int E) {
+	// the pivot row: a[L][E] becomes its inverse, the rest is
+	// multiplied by -1/a[L][E]
+	final int pos = find(L, E);
+	final Rational inv = val[L][pos].inverse();
+	final Rational f = inv.negate();
+	final int[] cL = col[L];
+	final Rational[] vL = val[L];
+	for (int k = 0; k < len[L]; k++) {
+	    vL[k] = (k == pos) ? inv : vL[k].mul(f);
+	}
+	for (int i = 0; i <= m + 1; i++) {
+	    if (i == L) continue;
+	    final int posE = find(i, E);
+	    if (posE < 0) continue; // a[i][E] = 0: the row does not change
+	    final Rational g = val[i][posE];
+	    // merge row i with g * (row L), column E becoming g*a[L][E]
+	    final int[] ci = col[i];
+	    final Rational[] vi = val[i];
+	    int p = 0, q = 0, r = 0;
+	    while (p < len[i] || q < len[L]) {
+		int jp = (p < len[i]) ? ci[p] : Integer.MAX_VALUE;
+		int jq = (q < len[L]) ? cL[q] : Integer.MAX_VALUE;
+		Rational x;
+		int j;
+		if (jq == E && jp == E) {
+		    j = E;
+		    x = g.mul(inv);
+		    p++;
+		    q++;
+		} else if (jp < jq) {
+		    j = jp;
+		    x = vi[p++];
+		} else if (jq < jp) {
+		    j = jq;
+		    x = vL[q++].mul(g);
+		} else {
+		    j = jp;
+		    x = vi[p++].add(vL[q++].mul(g));
+		}
+		if (x.signum() != 0) {
+		    mergeCol[r] = j;
+		    mergeVal[r] = x;
+		    r++;
+		}
+	    }
+	    // swap the row's arrays with the work space
+	    if (ci.length >= n + 1) {
+		col[i] = mergeCol;
+		val[i] = mergeVal;
+		mergeCol = ci;
+		mergeVal = vi;
+	    } else {
+		col[i] = mergeCol.clone();
+		val[i] = mergeVal.clone();
+	    }
+	    len[i] = r;
+	}
+    }
+
+    Rational value(int i, int j) {
+	return get(i, j);
+    }
+}
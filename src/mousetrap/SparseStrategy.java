@@ -0,0 +1,75 @@
+package mousetrap;
+
+/** A mixed strategy in a support-indexed form: the holes that the
+    player can play (in increasing order), and the probabilities of
+    playing them. All other holes have the probability 0. This takes
+    memory proportional to the number of holes that can be played,
+    rather than to the total number of holes.
+ */
+class SparseStrategy {
+    /** The holes that can be played, in increasing order. This is
+	normally one of the w[] arrays of the model, and is shared, not
+	copied. */
+    final int[] support;
+    /** values[i] is the probability of playing support[i] */
+    final double[] values;
+
+    /**	@param _support The holes that can be played, in increasing order
+	@param _values The probabilities of playing them
+     */
+    SparseStrategy(int[] _support, double[] _values) {
+	if (_support.length != _values.length) throw new IllegalArgumentException();
+	support = _support;
+	values = _values;
+    }
+
+    /** The probability of playing hole k */
+    double get(int k) {
+	int lo = 0, hi = support.length - 1;
+	while(lo <= hi) {
+	    int mid = (lo + hi) >>> 1;
+	    if (support[mid] < k) lo = mid + 1;
+	    else if (support[mid] > k) hi = mid - 1;
+	    else return values[mid];
+	}
+	return 0;
+    }
+
+    /** Converts this strategy to the dense form (see Mousetrap.spreadArray()) */
+    double[] toDense(int h) {
+	return Mousetrap.spreadArray(values, h, support);
+    }
+
+    /** Computes the infinity-norm difference of two strategies, i.e.
+	that of their dense forms */
+    static double infNormDiff(SparseStrategy a, SparseStrategy b) {
+	if (a.support == b.support) {
+	    return Mousetrap.infNormDiff(a.values, b.values);
+	}
+	// merge the two supports
+	double d = 0;
+	int i = 0, j = 0;
+	while(i < a.support.length || j < b.support.length) {
+	    int ka = (i < a.support.length) ? a.support[i] : Integer.MAX_VALUE;
+	    int kb = (j < b.support.length) ? b.support[j] : Integer.MAX_VALUE;
+	    double x = (ka < kb) ? Math.abs(a.values[i++]) :
+		(kb < ka) ? Math.abs(b.values[j++]) :
+		Math.abs(a.values[i++] - b.values[j++]);
+	    if (x>d) d=x;
+	}
+	return d;
+    }
+
+    /** Computes the infinity-norm difference of two arrays of
+	strategies */
+    static double infNormDiff(SparseStrategy a[][], SparseStrategy b[][]) {
+	double d = 0;
+	for(int i=0; i<a.length; i++) {
+	    for(int j=0; j<a[i].length; j++) {
+		double x = infNormDiff(a[i][j],b[i][j]);
+		if (x>d) d=x;
+	    }
+	}
+	return d;
+    }
+}
@@ -0,0 +1,280 @@
+package mousetrap;
+
+import java.util.*;
+import java.io.*;
+import java.util.concurrent.*;
+
+import util.ParseConfig;
+
+/** Runs Mousetrap or Mousetrap2 on a family of models, described by a
+    ParseConfig file, with several models being optimized at the same
+    time, on a pool of a fixed size. Each run writes its report to a
+    file of its own in the output directory; once all runs have
+    finished, a summary table (one line per run: the parameters, the
+    number of rounds, convergence, the avg payoff per round, and the
+    run time) is written to summary.txt there, and to the standard
+    output.
+
+    <p>The config file lists the models, and the values of each parameter
+    to try, as strings of comma- or space-separated values; all
+    combinations are run. For example:
+    <pre>
+    game = Mousetrap2        # or Mousetrap
+    models = "chain mo1"     # chain, mo1, mo3, mo4 (and, for Mousetrap, mo5, mo6)
+    h = "10 20 40"           # chain length
+    cyclic = "false true"
+    speed1 = "1 2"           # the (constrained) attacker's speed
+    speed2 = "1 2"           # the defender's speed (Mousetrap2 only)
+    mobileCat = "true false" # Mousetrap only
+    eps = "1e-5"             # the convergence tolerance for P and Q
+    threads = 4
+    outDir = sweep
+    </pre>
+    The parameters h, cyclic and the speeds only apply to the chains.
+    The other options of Mousetrap (T, accel, solver, gameCache,
+    closedForm, presolve, verbosity, dump, the LP options, ...) can be
+    given in the same file, or, as usual, as system properties, which
+    override the file. A game cache and the closed-form solver, if
+    requested, are shared by all runs. Each run solves its local games
+    sequentially, since the runs are parallel already.
+
+    <p>Usage: java mousetrap.Sweep sweep.conf
+ */
+class Sweep {
+    /** One model to be optimized, with the parameters it was made with */
+    static class Run {
+	final int no;
+	final String model;
+	final int h, speed1, speed2;
+	final boolean cyclic, mobileCat;
+	final double eps;
+	/** The results; null until the run has finished */
+	Mousetrap.Outcome outcome = null;
+	long msec = 0;
+	String error = null;
+
+	Run(int _no, String _model, int _h, boolean _cyclic, int _speed1, int _speed2, boolean _mobileCat, double _eps) {
+	    no = _no;
+	    model = _model;
+	    h = _h;
+	    cyclic = _cyclic;
+	    speed1 = _speed1;
+	    speed2 = _speed2;
+	    mobileCat = _mobileCat;
+	    eps = _eps;
+	}
+
+	/** The base name of this run's output files */
+	String name(boolean two) {
+	    String s = String.format("%03d-%s", no, model);
+	    if (model.equals("chain")) {
+		s += "-h" + h + (cyclic? "-cyclic" : "-open") + "-s" + speed1;
+		if (two) s += "-" + speed2;
+	    }
+	    if (!two) s += mobileCat? "-mobileCat" : "-mobileMouse";
+	    return s + "-eps" + eps;
+	}
+    }
+
+    final ParseConfig ht;
+    /** True for Mousetrap2, false for Mousetrap */
+    final boolean two;
+    final File outDir;
+    final SimplexResults.Options lpOptions;
+    final GameCache gameCache;
+    final ClosedForm closedForm;
+    final Verbosity verbosity;
+    final ResultsSink.Format dump;
+    final List<Run> runs = new ArrayList<>();
+
+    Sweep(ParseConfig _ht) {
+	ht = _ht;
+	String game = ht.getOption("game", "Mousetrap");
+	if (game.equals("Mousetrap2")) two = true;
+	else if (game.equals("Mousetrap")) two = false;
+	else throw new IllegalArgumentException("Unknown game: " + game);
+	outDir = new File(ht.getOption("outDir", "sweep"));
+	lpOptions = new SimplexResults.Options(ht);
+	int cacheSize = ht.getOption("gameCache", 0);
+	gameCache = (cacheSize > 0) ? new GameCache(cacheSize, lpOptions) : null;
+	closedForm = ht.getOption("closedForm", false) ? new ClosedForm() : null;
+	verbosity = Verbosity.create(ht);
+	dump = ht.getOptionEnum(ResultsSink.Format.class, "dump", ResultsSink.Format.NONE);
+
+	// all combinations of the parameters; for the fixed models, only
+	// mobileCat and eps vary
+	String[] models = list("models", "chain");
+	int[] hs = intList("h", "10"), speeds1 = intList("speed1", "1"),
+	    speeds2 = two ? intList("speed2", "1") : new int[] {1};
+	boolean[] cyclics = booleanList("cyclic", "false"),
+	    mobileCats = two ? new boolean[] {true} : booleanList("mobileCat", "true");
+	double[] epss = doubleList("eps", "1e-5");
+	for(String model: models) {
+	    boolean chain = model.equals("chain");
+	    for(int h: chain? hs : new int[] {0}) {
+		for(boolean cyclic: chain? cyclics : new boolean[] {false}) {
+		    for(int speed1: chain? speeds1 : new int[] {0}) {
+			for(int speed2: chain? speeds2 : new int[] {0}) {
+			    for(boolean mobileCat: mobileCats) {
+				for(double eps: epss) {
+				    runs.add(new Run(runs.size()+1, model, h, cyclic, speed1, speed2, mobileCat, eps));
+				}
+			    }
+			}
+		    }
+		}
+	    }
+	}
+    }
+
+    private String[] list(String name, String def) {
+	String s = ht.getOption(name, def).trim();
+	return s.isEmpty() ? new String[0] : s.split("[,\\s]+");
+    }
+
+    private int[] intList(String name, String def) {
+	String[] v = list(name, def);
+	int[] z = new int[v.length];
+	for(int i=0; i<v.length; i++) z[i] = Integer.parseInt(v[i]);
+	return z;
+    }
+
+    private double[] doubleList(String name, String def) {
+	String[] v = list(name, def);
+	double[] z = new double[v.length];
+	for(int i=0; i<v.length; i++) z[i] = Double.parseDouble(v[i]);
+	return z;
+    }
+
+    private boolean[] booleanList(String name, String def) {
+	String[] v = list(name, def);
+	boolean[] z = new boolean[v.length];
+	for(int i=0; i<v.length; i++) z[i] = Boolean.parseBoolean(v[i]);
+	return z;
+    }
+
+    /** Creates the model for a run */
+    Mousetrap makeModel(Run run) {
+	switch (run.model) {
+	case "chain":
+	    return two ? Mousetrap2.moChain(run.h, run.cyclic, run.speed1, run.speed2) :
+		Mousetrap.moChain(run.h, run.cyclic, run.speed1);
+	case "mo1":
+	    return two ? Mousetrap2.mo1() : Mousetrap.mo1();
+	case "mo3":
+	    return two ? Mousetrap2.mo3() : Mousetrap.mo3();
+	case "mo4":
+	    return two ? Mousetrap2.mo4() : Mousetrap.mo4();
+	case "mo5":
+	    if (!two) return Mousetrap.mo5();
+	    break;
+	case "mo6":
+	    if (!two) return Mousetrap.mo6();
+	    break;
+	}
+	throw new IllegalArgumentException("Unknown model for " + (two? "Mousetrap2" : "Mousetrap") + ": " + run.model);
+    }
+
+    /** Optimizes the model of one run, writing the report to its own file */
+    void execute(Run run) {
+	long t0 = System.currentTimeMillis();
+	String name = run.name(two);
+	try (PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(new File(outDir, name + ".out")), 1<<16));
+	     ResultsSink sink = ResultsSink.tee(new TextResultsSink(out, verbosity),
+						ResultsSink.open(dump, new File(outDir, name + ResultsSink.extension(dump))))) {
+	    Mousetrap mo = makeModel(run);
+	    mo.constrainedPlayerIsTheAttacker = run.mobileCat;
+	    mo.lpOptions = lpOptions;
+	    mo.maxRounds = ht.getOption("T", 100);
+	    mo.eps = run.eps;
+	    mo.accel = Acceleration.create(ht);
+	    mo.gameCache = gameCache;
+	    mo.closedForm = closedForm;
+	    mo.sink = sink;
+	    if (two) {
+		((Mousetrap2)mo).useSymmetry = ht.getOption("sym", false);
+		((Mousetrap2)mo).optimize(run.eps);
+	    } else if (ht.getOptionEnum(Mousetrap.Solver.class, "solver", Mousetrap.Solver.VALUE) == Mousetrap.Solver.POLICY) {
+		mo.optimizePolicy();
+	    } else {
+		mo.optimize();
+	    }
+	    run.outcome = mo.outcome;
+	} catch(Throwable ex) {
+	    // including Errors, such as OutOfMemoryError or
+	    // StackOverflowError with a large h, so that every failure is
+	    // reported in the summary; the model is unreachable by now, so
+	    // the other runs can go on
+	    run.error = ex.toString();
+	}
+	run.msec = System.currentTimeMillis() - t0;
+    }
+
+    /** Runs all models, on a pool of the specified number of threads */
+    void execute(int threads) throws InterruptedException {
+	ExecutorService pool = Executors.newFixedThreadPool(threads);
+	for(Run run: runs) pool.execute(() -> execute(run));
+	pool.shutdown();
+	pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    /** The summary table, one line per run, in the order of the runs */
+    String summary() {
+	StringBuilder s = new StringBuilder();
+	s.append("#run\tmodel\th\tcyclic\tspeed1");
+	if (two) s.append("\tspeed2");
+	else s.append("\tmobileCat");
+	s.append("\teps\trounds\tconverged\tavgAvgF\tmsec\n");
+	for(Run run: runs) {
+	    s.append(run.no).append('\t').append(run.model);
+	    if (run.model.equals("chain")) {
+		s.append('\t').append(run.h).append('\t').append(run.cyclic).append('\t').append(run.speed1);
+		if (two) s.append('\t').append(run.speed2);
+	    } else {
+		s.append("\t-\t-\t-");
+		if (two) s.append("\t-");
+	    }
+	    if (!two) s.append('\t').append(run.mobileCat);
+	    s.append('\t').append(run.eps);
+	    if (run.outcome != null) {
+		s.append('\t').append(run.outcome.rounds).append('\t').append(run.outcome.converged).append('\t');
+		FastFormat.appendFixed4(s, run.outcome.avgAvgF);
+	    } else {
+		s.append("\t-\t-\t").append(run.error == null ? "-" : "FAILED: " + run.error);
+	    }
+	    s.append('\t').append(run.msec).append('\n');
+	}
+	return s.toString();
+    }
+
+    static public void main(String argv[]) throws IOException, InterruptedException {
+	if (argv.length != 1) {
+	    System.err.println("Usage: java mousetrap.Sweep sweep.conf");
+	    System.exit(1);
+	}
+	ParseConfig ht = new ParseConfig(argv[0]);
+	// let's always produce UNIX-style output, even when running under
+	// MS Windows
+	System.setProperty("line.separator", "\n");
+
+	Sweep sweep = new Sweep(ht);
+	if (!sweep.outDir.isDirectory() && !sweep.outDir.mkdirs()) {
+	    throw new IOException("Cannot create directory " + sweep.outDir);
+	}
+	int threads = ht.getOption("threads", Runtime.getRuntime().availableProcessors());
+	System.out.println(sweep.runs.size() + " runs, on " + threads + " threads; output will go to directory " + sweep.outDir);
+	long t0 = System.currentTimeMillis();
+	sweep.execute(threads);
+	String summary = sweep.summary();
+	try (Writer w = new FileWriter(new File(sweep.outDir, "summary.txt"))) {
+	    w.write(summary);
+	}
+	System.out.print(summary);
+	System.out.println("Total time " + (System.currentTimeMillis() - t0) + " msec");
+	if (sweep.lpOptions.stats != null) {
+	    System.out.println("Simplex (" + sweep.lpOptions.engine + ", " + sweep.lpOptions.pivot + "): " + sweep.lpOptions.stats);
+	}
+	if (sweep.gameCache != null) System.out.println(sweep.gameCache);
+	if (sweep.closedForm != null) System.out.println(sweep.closedForm);
+    }
+}
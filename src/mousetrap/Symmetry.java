@@ -0,0 +1,147 @@
+package mousetrap;
+
+import java.util.*;
+
+/** The symmetries of a Mousetrap2 model: the automorphisms shared by
+    the two players' movement maps w and w2, i.e. the permutations s of
+    the holes such that j is in w[i] if and only if s(j) is in w[s(i)],
+    and the same for w2. If s is such an automorphism, the local game
+    at the pair of holes (s(i), s(j)) is the local game at (i,j) with the
+    holes renamed, and so are its solution and its payoff. Thus, only
+    one pair in each orbit of the group acting on the (attacker,
+    defender) pairs needs to be solved; the solutions at the other
+    pairs are obtained by renaming the holes (see fill()). For a
+    circular chain of h holes (whose automorphisms are the h rotations
+    and the h reflections), this means about h/2 local games instead of
+    h<sup>2</sup>.
+
+    <p>The automorphisms are found by backtracking, assigning the images
+    of the holes 0, 1, ... in turn, and checking the adjacencies among
+    the holes assigned so far. At most maxAuto automorphisms are
+    collected; if the group is larger than that, the orbits are computed
+    for the subgroup they generate, which is still correct, only less
+    economical.
+ */
+class Symmetry {
+    final int h;
+    /** The automorphisms found, excluding the identity */
+    final List<int[]> automorphisms = new ArrayList<>();
+    /** The representative pairs, one per orbit, each one encoded as i*h+j */
+    final int[] reps;
+    /** For each pair ij (encoded as i*h+j), its representative */
+    final int[] repOf;
+    /** For each pair ij that is not a representative, a pair from which
+	it is reached by one automorphism (in the breadth-first search of
+	its orbit), i.e. ij = s(from[ij]) with s = automorphisms.get(via[ij]).
+	Composing these steps back to the representative gives the
+	permutation that takes the representative to ij; fill() does that
+	one step at a time, so only two ints per pair are kept, rather
+	than a whole permutation. */
+    private final int[] from, via;
+    /** The pairs that are not representatives, in an order in which
+	from[ij] comes before ij (or is a representative) */
+    private final int[] order;
+
+    /** Finds the automorphisms of the movement maps w and w2 (up to
+	maxAuto of them), and the orbits of the pairs of holes */
+    Symmetry(int[][] w, int[][] w2, int maxAuto) {
+	h = w.length;
+	boolean[][] adj = adjacency(w), adj2 = adjacency(w2);
+	search(0, new int[h], new boolean[h], w, w2, adj, adj2, maxAuto);
+
+	repOf = new int[h*h];
+	from = new int[h*h];
+	via = new int[h*h];
+	Arrays.fill(repOf, -1);
+	int[] r = new int[h*h];
+	int nr = 0;
+	int[] queue = new int[h*h];
+	int tail = 0;
+	for(int x=0; x<h*h; x++) {
+	    if (repOf[x] >= 0) continue;
+	    r[nr++] = x;
+	    repOf[x] = x;
+	    int head = tail;
+	    queue[tail++] = x;
+	    while(head < tail) {
+		int y = queue[head++];
+		for(int g=0; g<automorphisms.size(); g++) {
+		    int[] s = automorphisms.get(g);
+		    int z = s[y / h] * h + s[y % h];
+		    if (repOf[z] >= 0) continue;
+		    repOf[z] = x;
+		    from[z] = y;
+		    via[z] = g;
+		    queue[tail++] = z;
+		}
+	    }
+	}
+	reps = Arrays.copyOf(r, nr);
+	order = new int[h*h - nr];
+	int k = 0;
+	for(int z: queue) {
+	    if (repOf[z] != z) order[k++] = z;
+	}
+    }
+
+    private boolean[][] adjacency(int[][] w) {
+	boolean[][] a = new boolean[h][];
+	for(int i=0; i<h; i++) {
+	    a[i] = new boolean[h];
+	    for(int j: w[i]) a[i][j] = true;
+	}
+	return a;
+    }
+
+    /** Tries all images for hole k, given those of holes 0..k-1 in s[]
+	@return false once maxAuto automorphisms have been found */
+    private boolean search(int k, int[] s, boolean[] used, int[][] w, int[][] w2, boolean[][] adj, boolean[][] adj2, int maxAuto) {
+	if (k == h) {
+	    boolean identity = true;
+	    for(int i=0; i<h && identity; i++) identity = (s[i] == i);
+	    if (!identity) automorphisms.add(s.clone());
+	    return automorphisms.size() < maxAuto;
+	}
+	for(int v=0; v<h; v++) {
+	    if (used[v] || w[v].length != w[k].length || w2[v].length != w2[k].length) continue;
+	    boolean ok = adj[k][k]==adj[v][v] && adj2[k][k]==adj2[v][v];
+	    for(int a=0; a<k && ok; a++) {
+		ok = adj[a][k]==adj[s[a]][v] && adj[k][a]==adj[v][s[a]] &&
+		    adj2[a][k]==adj2[s[a]][v] && adj2[k][a]==adj2[v][s[a]];
+	    }
+	    if (!ok) continue;
+	    s[k] = v;
+	    used[v] = true;
+	    boolean more = search(k+1, s, used, w, w2, adj, adj2, maxAuto);
+	    used[v] = false;
+	    if (!more) return false;
+	}
+	return true;
+    }
+
+    /** The strategy x, with the holes renamed by s, and with the
+	specified support (which must be the image of x's support under s) */
+    static SparseStrategy rename(SparseStrategy x, int[] s, int[] support) {
+	int[] inv = new int[s.length];
+	for(int k=0; k<s.length; k++) inv[s[k]] = k;
+	double[] values = new double[support.length];
+	for(int a=0; a<support.length; a++) values[a] = x.get(inv[support[a]]);
+	return new SparseStrategy(support, values);
+    }
+
+    /** Fills in the solutions of the local games at all pairs that are
+	not representatives, from those at the representatives.
+	@param po The solutions; po[i][j] must be set for every
+	representative pair (i,j)
+	@param w The attacker's movement map, for the supports of p
+	@param w2 The defender's movement map, for the supports of q
+     */
+    void fill(Mousetrap2.OptResults2[][] po, int[][] w, int[][] w2) {
+	for(int ij: order) {
+	    int[] s = automorphisms.get(via[ij]);
+	    int i = ij / h, j = ij % h;
+	    Mousetrap2.OptResults2 x = po[from[ij] / h][from[ij] % h];
+	    po[i][j] = new Mousetrap2.OptResults2(rename(x.p, s, w[i]), rename(x.q, s, w2[j]));
+	}
+    }
+}
@@ -0,0 +1,75 @@
+package mousetrap;
+
+/** A simplex tableau, as seen by the pivoting loop in Simplex.solve().
+    The layout is the one used by the original Simplex.simplex() code:
+    rows 0..m-1 hold the constraints, row m holds the objective,
+    and row m+1 holds the phase-1 objective; columns 0..n-1 correspond
+    to the non-basic variables (column n-1 being, initially, the
+    artificial variable), and column n holds the right-hand side.
+
+    <p>Subclasses differ in the arithmetic used to store and update
+    the tableau entries.
+ */
+abstract class Tableau {
+    /** Number of constraints */
+    final int m;
+    /** Number of non-basic columns (the number of variables + 1) */
+    final int n;
+    /** index[j] (j&lt;n) is the variable associated with column j;
+	index[n+i] is the variable that is basic in row i. */
+    final int[] index;
+
+    Tableau(int _m, int _n) {
+	m = _m;
+	n = _n;
+	index = new int[n + m];
+    }
+
+    /** Fills the tableau with the initial data for the problem
+	max c*x such that A*x &lt;= b, x &gt;= 0, which must be of the same
+	size as the one the tableau was created for. This is called by
+	the constructors, and can be called again to start over.
+     */
+    abstract void load(Rational[][] A, Rational[] b, Rational[] c);
+
+    /** Resets index[] to the initial (all-slack) basis */
+    void resetIndex() {
+	for (int i = 0; i < n + m; i++) {
+	    index[i] = i;
+	}
+    }
+
+    /** The sign of a[i][j] */
+    abstract int signum(int i, int j);
+
+    /** Compares a[i][j] with a[k][j]. This is only used (with j=n)
+	before the first pivot, to find the most violated constraint.
+     */
+    abstract int compare(int i, int k, int j);
+
+    /** Compares a[i][j] with a[i][k] (two entries of the same row) */
+    abstract int compareInRow(int i, int j, int k);
+
+    /** The sign of a[i][n]/a[i][E] - a[k][n]/a[k][E] (the ratio test) */
+    abstract int compareRatios(int i, int k, int E);
+
+    /** Carries out the arithmetic of the pivot on a[L][E]. (The index[]
+	array has already been updated by the caller).
+     */
+    abstract void pivot(int L, int E);
+
+    /** The value of a[i][j] */
+    abstract Rational value(int i, int j);
+
+    /** An approximation of a[i][j], for the pivoting rules that need
+	magnitudes (see PivotRule) */
+    double doubleValue(int i, int j) {
+	return value(i, j).doubleValue();
+    }
+
+    /** The dual value of constraint i, whose slack variable is non-basic
+	in column j: minus the reduced cost of that variable, -a[m][j] */
+    Rational dualValue(int i, int j) {
+	return value(m, j).negate();
+    }
+}
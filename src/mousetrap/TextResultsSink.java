@@ -0,0 +1,40 @@
+package mousetrap;
+
+import java.io.*;
+
+/** The text report: writes the report text as it is, and the reports
+    of the rounds selected by the Verbosity, to a PrintStream. The
+    final results are not written separately, since they are part of
+    the report text already. The stream belongs to the caller, and is
+    only flushed by close().
+ */
+class TextResultsSink implements ResultsSink {
+    private final PrintStream out;
+    /** Which rounds are reported in full; if null, the optimizer's
+	default is followed */
+    private final Verbosity verbosity;
+
+    TextResultsSink(PrintStream _out, Verbosity _verbosity) {
+	out = _out;
+	verbosity = _verbosity;
+    }
+
+    public void text(String s) {
+	out.print(s);
+    }
+
+    public void round(int n, boolean last, boolean strategies, Round report) {
+	if (verbosity == null) report.print(out, strategies);
+	else if (verbosity.report(n, last)) report.print(out, true);
+    }
+
+    public boolean takesFinalResults() {
+	return false;
+    }
+
+    public void finalResults(String model, String[] states, String[] holes, double[][] p, double[][] q, double[] avgF) {}
+
+    public void close() {
+	out.flush();
+    }
+}
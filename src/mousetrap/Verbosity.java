@@ -0,0 +1,42 @@
+package mousetrap;
+
+import util.ParseConfig;
+
+/** Controls which rounds of the value iteration are reported in full
+    (strategies, average payoffs) in the text report (see
+    TextResultsSink). The last round is always reported. */
+class Verbosity {
+    enum Level {
+	/** Only the last round */
+	SUMMARY,
+	/** Every k-th round, and the last one */
+	EVERY,
+	/** Every round */
+	FULL
+    };
+
+    final Level level;
+    final int every;
+
+    Verbosity(Level _level, int _every) {
+	level = _level;
+	every = _every;
+    }
+
+    /** Reads the options verbosity and every (k, which must be at
+	least 1); returns null, i.e. the program's default, if verbosity
+	is not specified */
+    static Verbosity create(ParseConfig ht) {
+	Level level = ht.getOptionEnum(Level.class, "verbosity", null);
+	int every = ht.getOption("every", 10);
+	if (every < 1) throw new IllegalArgumentException("every=" + every + ": must be at least 1");
+	return (level == null) ? null : new Verbosity(level, every);
+    }
+
+    /** Should round n (numbered from 0) be reported?
+	@param last True if this is the last round
+     */
+    boolean report(int n, boolean last) {
+	return last || level == Level.FULL || level == Level.EVERY && (n+1) % every == 0;
+    }
+}